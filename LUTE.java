@@ -13,23 +13,68 @@
  
 */
 
-import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.regex.Pattern;
+import java.util.NoSuchElementException;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 public class LUTE {
 
 	public static void main( String[] args ) {
 		try {
-			Project3 tc = new Project3( );
-			tc.test( args[0], 0 );
+			LUTE tc = new LUTE( );
+			
+			// -stream checks tokens as they're read, -fused writes out the C for each sequence as it's read,
+			// -pipeline does the same on three threads, -parallel lexes chunks of the file at once,
+			// -parallelemit writes out the C for groups of sequences at once, -offheap keeps the tokens
+			// out of the heap, -spill <dir> keeps them in a temp file in dir
+			// The source is read from stdin if there's no file given, or it's -
+			int arg = 0;
+			for( ; arg < args.length && args[arg].startsWith( "-" ) && args[arg].length( ) > 1; ++arg ) {
+				if( args[arg].equals( "-stream" ) )
+					tc.setStreaming( true );
+				else if( args[arg].equals( "-fused" ) )
+					tc.setFused( true );
+				else if( args[arg].equals( "-pipeline" ) )
+					tc.setPipelined( true );
+				else if( args[arg].equals( "-parallel" ) )
+					tc.setParallelLexing( true );
+				else if( args[arg].equals( "-parallelemit" ) )
+					tc.setParallelEmission( true );
+				else if( args[arg].equals( "-offheap" ) )
+					tc.setOffHeap( true );
+				else if( args[arg].equals( "-spill" ) )
+					tc.setSpillDirectory( new File( args[++arg] ) );
+			}
+			
+			if( arg == args.length || args[arg].equals( "-" ) )
+				tc.test( LUTE.readSource( System.in ), 0, System.out );
+			else
+				tc.test( args[arg], 0 );
 			//tc.test( "./test/test3.sml", 0 );
 		}
 		catch( IOException ioe ) {
@@ -44,425 +89,374 @@ public class LUTE {
 	 * @param outputMode	debug purposes, unused externally	
 	 */
 	public void test( String fileName, int outputMode ) throws IOException {
-		File file = new File( fileName );
-		BufferedReader br = new BufferedReader( new FileReader( file ) );
-		
-		// Indicates syntax error
-		boolean encounteredSyntaxError = false;
+		this.test( fileName, outputMode, System.out );
+	}
+	
+	/**
+	 * As above, printing to out. Any number of these can run at once, on any threads.
+	 */
+	public void test( String fileName, int outputMode, PrintStream out ) throws IOException {
+		this.test( LUTE.readSource( new File( fileName ) ), outputMode, out );
+	}
+	
+	/**
+	 * As above, for a source that's already been read in (see @readSource and @toSource)
+	 */
+	public void test( SOURCE_BUFFER source, int outputMode, PrintStream out ) throws IOException {
+		this.compile( new COMPILATION_CONTEXT( source, outputMode, out ) );
+	}
+	
+	/**
+	 * Compiles the source to C in memory, printing nothing. <br />
+	 * Like test( ), any number of these can run at once, on any threads.
+	 * 
+	 * @return			The C and any syntax error
+	 */
+	public COMPILATION_RESULT compile( CharSequence source ) throws IOException {
+		return this.compile( LUTE.toSource( source ) );
+	}
+	
+	/**
+	 * As above, for the bytes between the buffer's position and limit
+	 */
+	public COMPILATION_RESULT compile( ByteBuffer source ) throws IOException {
+		return this.compile( new SOURCE_BUFFER( source.slice( ) ) );
+	}
+	
+	/**
+	 * As above, for everything left in the stream
+	 */
+	public COMPILATION_RESULT compile( InputStream source ) throws IOException {
+		return this.compile( LUTE.readSource( source ) );
+	}
+	
+	/**
+	 * As above, for a source that's already been read in. Everything but the result is made in the
+	 * calling thread's @COMPILATION_SESSION, so lots of small sources can be compiled one after
+	 * another with next to no garbage.
+	 */
+	public COMPILATION_RESULT compile( SOURCE_BUFFER source ) throws IOException {
+		return this.compile( source, COMPILATION_SESSION.forThread( ) );
+	}
+	
+	/**
+	 * As above, with the session's buffers rather than new ones
+	 */
+	public COMPILATION_RESULT compile( SOURCE_BUFFER source, COMPILATION_SESSION session ) throws IOException {
+		session.begin( );
+		try {
+			COMPILATION_CONTEXT context = new COMPILATION_CONTEXT( source, session );
+			this.compile( context );
+			return new COMPILATION_RESULT( session.getCCode( ), context.getErrors( ) );
+		}
+		finally {
+			session.reset( );
+		}
+	}
+	
+	/**
+	 * Compiles the source, writing the C to sink as it's made rather than keeping it
+	 * 
+	 * @return			Just the syntax error, if any
+	 */
+	public COMPILATION_RESULT compile( SOURCE_BUFFER source, OutputStream sink ) throws IOException {
+		PrintStream out = new PrintStream( sink );
+		COMPILATION_CONTEXT context = new COMPILATION_CONTEXT( source, 0, out, false );
+		this.compile( context );
+		out.flush( );
+		return new COMPILATION_RESULT( null, context.getErrors( ) );
+	}
+	
+	/**
+	 * Runs the compilation in the context, in whichever mode is set, with a token store of its own
+	 */
+	private void compile( COMPILATION_CONTEXT context ) throws IOException {
+		try {
+			context.setStore( this.newTokenStore( context ) );
+			this.compilePasses( context );
+		}
+		finally {
+			context.close( );
+		}
+	}
+	
+	private void compilePasses( COMPILATION_CONTEXT context ) throws IOException {
+		if( this.pipelined ) {
+			new TOKEN_PIPELINE( context ).run( );
+			return;
+		}
+		if( this.fused ) {
+			this.testFused( context );
+			return;
+		}
 		
-		// raw data from file stream
-		int i;
+		I_TOKEN_STORE buffer = context.store;
+		FLOW_VALIDATOR validator = context.getValidator( );
 		
-		// data as text char
-		char c;
+		// First pass syntax error checking
+		SYNTAX_ERROR syntaxError;
 		
-		// an assembled string of chars
-		StringBuilder tokenString = new StringBuilder( "" );
+		if( this.parallelLexing && !this.streaming ) {
+			syntaxError = this.lexParallel( context );
+		}
+		else {
+			TOKEN_STREAM tokens = new TOKEN_STREAM( context.source, context.literals );
+			
+			// Pull every token out of the lexer into the buffer
+			// When streaming, each token goes straight on to the validator as well, so we can stop at the
+			// first error of either kind without reading any further
+			while( tokens.hasNext( ) ) {
+				I_TOKEN token = tokens.next( );
+				int ix = context.addToken( token, tokens.getOffset( ), tokens.getLength( ), tokens.getTokenNum( ), tokens.getLine( ), tokens.getTokenStart( ) );
+				if( this.streaming && !validator.accept( ix, token.getKind( ), tokens.getLine( ) ) )
+					break;
+			}
+			syntaxError = tokens.getSyntaxError( );
+		}
 		
-		I_TOKEN token = null;
+		// We only proceed to the next part if we didn't flag a syntax error in the first pass
+		// This is the second pass where we proceed to validate the token juxtaposition
+		if( syntaxError == null && !this.streaming ) {
+			for( int ix = 0; ix < buffer.size( ); ++ix ) {
+				if( !validator.accept( ix, buffer.getKind( ix ), buffer.getLine( ix ) ) )
+					break;
+			}
+		}
+		if( syntaxError == null && !validator.finish( ) )
+			syntaxError = validator.getSyntaxError( );
 		
-		// char in line that token starts
-		int token_start = 0;
-		int char_count = -1;
-		int token_num = 0;
-		int line = 1;
+		// Then we parse into a tree, which has to fit the grammar as well
+		SYNTAX_PARSER parser = context.getParser( );
+		PROGRAM_NODE program = syntaxError == null ? parser.parse( ) : null;
+		if( syntaxError == null && program == null )
+			syntaxError = parser.getSyntaxError( );
 		
-		// Read the input file character by character
-		// With each character read, attempt to find a valid token
-		// This process ignores the possibility of data and identifier tokens until a delimiter (space, newline) is reached
-		while( (i = br.read( )) >= 0 ) {
-			c = (char)i;
-			char_count++;
-			
-			// The last part handles an edge case where you read a character and then EOF
-			boolean currentCharIsDelimiter = (this.read( c, tokenString ) > 0) || !br.ready( );
+		if( syntaxError != null ) {
+			context.report( syntaxError );
+		}
+		else {
+			//System.out.println( "parsing successful" );
 			
-			if( !currentCharIsDelimiter && tokenString.length() == 1 )
-				token_start = char_count;
+			// The tree is lowered to instructions, and the C goes out as they're walked
+			LINEAR_IR ir = context.getIR( ).lower( program.items );
+			C_EMITTER out = context.getEmitter( );
+			LUTE.emitHeader( out );
 			
-			token = this.getToken( tokenString.toString( ), currentCharIsDelimiter );
+			if( this.parallelEmission )
+				this.emitParallel( out, ir );
+			else
+				LUTE.emitCCode( out, ir, 0, ir.size( ), true );
 			
-			if( token != null ) {
-				this.addToken( token, tokenString.toString( ), token_num, line, token_start, outputMode );
-				token_num++;
-				
-				tokenString = new StringBuilder( "" );
-			}
-			// First pass syntax error checking
-			// We've read the entire string of characters and haven't found a valid token
-			// So we do some work
-			else {
-				if( currentCharIsDelimiter && tokenString.length() > 0 ) {
-					
-					// Search for a valid token, cut off the last character, search, repeat
-					// If a token is found, "cut it out" and repeat with the remaining characters
-					String opTokenChar;
-					LinkedList<I_TOKEN> opTokens = new LinkedList<I_TOKEN>( );
-					I_TOKEN opToken;
-					
-					do {
-						opToken = null;
-						int looklength = tokenString.length( );
-						for( ; looklength > 0; --looklength ) {
-							opTokenChar = tokenString.substring( 0, looklength );
-							opToken = this.getToken( opTokenChar, true );
-							if( opToken != null )
-								break;
-						}
-						
-						if( opToken != null ) {
-							opTokens.add( opToken );
-							tokenString.delete( 0 , looklength );
-						}
-						
-					}
-					while( opToken != null );
-					
-					// The length check is necessary to make sure the entire string was a glob of tokens
-					// Otherwise, we ignore syntax errors like "2.532.50" for a float because it will see
-					// "2.532" as a valid float and ignore the remaining ".50"
-					if( !opTokens.isEmpty( ) && tokenString.length( ) == 0 ) {
-						for( I_TOKEN t : opTokens ) {
-							this.addToken(t, t.getTokenChars( ), ++token_num, line, token_start, outputMode );
-							token_start += t.getTokenChars( ).length( );
-						}
-					}
-					else {
-						//System.out.println( "Syntax Error on Line " + line + " at position " + token_start + ": " + tokenString );
-						System.out.println( "Line " + line + " : syntax error : " + tokenString.substring( 0, 1 ) );
-						encounteredSyntaxError = true;
-						break;
-					}
-				}
-			}
-
-			if( c == '\n' ) {
-				line++;
-				char_count = -1;
-				token_start = 0;
-				tokenString = new StringBuilder( "" );
-			}
+			if( !out.endsNear( '\n' ) )
+				out.append( "\n" );
+			out.append( "}" );
+			out.append( System.lineSeparator( ) );
+			out.flush( );
 		}
-		br.close( );
-		
-		// We only proceed to the next part if we didn't flag a syntax error in the first pass
-		// This is the second pass where we proceed to validate the token juxtaposition
-		if( !encounteredSyntaxError ) {
-			// Technically unnecessary but kept just in case
-			//this.tokenBuffer.add( new TOKEN_META_CHUNK( this.EOF, line, token_start, tokenString.toString( ) ) );
+	}
+	
+	/**
+	 * All three passes at once: each token is parsed as soon as it's been checked, and each item of the
+	 * program written out as C as soon as it's parsed, so only the tokens being looked at are ever kept
+	 * (the tree of the item being parsed aside). <br />
+	 * The C comes out the same as the passes one after the other, except that on a syntax error the C
+	 * for the items before it will already be out (the error follows it), and it's the first error of
+	 * any kind that is reported, as with @setStreaming.
+	 */
+	private void testFused( COMPILATION_CONTEXT context ) throws IOException {
+		I_TOKEN_STORE buffer = context.store;
+		TOKEN_STREAM tokens = new TOKEN_STREAM( context.source, context.literals );
+		FLOW_VALIDATOR validator = context.getValidator( );
+		SYNTAX_PARSER parser = context.getParser( );
+		LINEAR_IR ir = context.getIR( );
+		
+		// debug output has the tokens first, so the C is held back until the end
+		StringWriter held = context.outputMode == 2 ? new StringWriter( ) : null;
+		C_EMITTER out = held != null ? new C_EMITTER( held ) : context.getEmitter( );
+		
+		// the tokens before next have been parsed, and some C written if started
+		int next = 0;
+		boolean started = false;
+		
+		while( tokens.hasNext( ) ) {
+			I_TOKEN token = tokens.next( );
+			int ix = context.addToken( token, tokens.getOffset( ), tokens.getLength( ), tokens.getTokenNum( ), tokens.getLine( ), tokens.getTokenStart( ) );
+			if( !validator.accept( ix, token.getKind( ), tokens.getLine( ) ) )
+				break;
 			
-			// A "stack" of all the logic/conditional/loop type tokens encountered and their "depth" in the logic
-			// Used to track the flow of conditions and check that nothing is left dangling or is extra.
-			// Likely inefficient for large/deep programs
-			LinkedList<TOKEN_LOGIC_DEPTH> logicStack = new LinkedList<TOKEN_LOGIC_DEPTH>( );
+			// a token is parsed once it's checked (and so its kind and logic depth are final)
+			// after a syntax error in the parse the rest are still read and checked, but go no further
+			if( parser.getSyntaxError( ) == null && next < validator.getChecked( ) ) {
+				parser.parse( next, validator.getChecked( ) );
+				next = validator.getChecked( );
+				started = LUTE.emitParsed( out, parser, ir, started, false );
+			}
 			
-			// How "deep" into a condition we are. If you had 3 nested if's, they'd be 1, 2, and 3 respectively
-			int logicDepth = -1;
+			// the validator can still blame the token before the next one it checks, as can the parser
+			// the last one it was handed
+			buffer.discard( validator.getChecked( ) - 1 );
+		}
+		
+		SYNTAX_ERROR syntaxError = parser.getSyntaxError( );
+		if( syntaxError == null )
+			syntaxError = tokens.getSyntaxError( );
+		if( syntaxError == null && !validator.finish( ) )
+			syntaxError = validator.getSyntaxError( );
+		
+		// the program ends after the last token, whatever it is
+		if( syntaxError == null && !(parser.parse( next, buffer.size( ) ) && parser.finish( )) )
+			syntaxError = parser.getSyntaxError( );
+		started = LUTE.emitParsed( out, parser, ir, started, syntaxError == null );
+		
+		if( syntaxError != null ) {
+			if( held == null )
+				out.flush( );
+			context.report( syntaxError );
+			return;
+		}
+		
+		if( !started )
+			LUTE.emitHeader( out );
+		if( !out.endsNear( '\n' ) )
+			out.append( "\n" );
+		out.append( "}" );
+		out.append( System.lineSeparator( ) );
+		out.flush( );
+		
+		if( held != null )
+			context.out.print( held.toString( ) );
+	}
+	
+	/**
+	 * Lowers the items of the program the parser has finished since it was last asked and writes out
+	 * their C (the header first, if nothing's been written yet), then lets go of them and their
+	 * instructions. If ending, they're the last.
+	 * 
+	 * @return			Whether anything has been written yet
+	 */
+	private static boolean emitParsed( C_EMITTER out, SYNTAX_PARSER parser, LINEAR_IR ir, boolean started, boolean ending ) throws IOException {
+		ArrayList<SYNTAX_NODE> items = parser.getParsed( );
+		if( items.isEmpty( ) )
+			return started;
+		
+		if( !started )
+			LUTE.emitHeader( out );
+		ir.lower( items );
+		LUTE.emitCCode( out, ir, 0, ir.size( ), ending );
+		ir.clear( );
+		parser.forget( );
+		return true;
+	}
+	
+	private static void emitHeader( C_EMITTER out ) throws IOException {
+		out.append( "#include <ml-c.h>\n" );
+		out.append( "int main() \n" );
+		out.append( "{\n" );
+	}
+	
+	/**
+	 * Chunks are at least this many chars, so small files are lexed in one go
+	 */
+	public static final int MIN_LEX_CHUNK = 1 << 16;
+	
+	/**
+	 * The first pass, with chunks of whole lines lexed at the same time (tokens never cross a newline).
+	 * The chunks' tokens are added to the buffer in order as each one is done, numbered on from the chunk
+	 * before and with their identifiers interned then, so the buffer, symbol ids and debug output all
+	 * come out the same as lexing it in one go. <br />
+	 * Nothing after the first chunk with a syntax error is kept.
+	 * 
+	 * @return			The first syntax error in the file, or null if there wasn't one
+	 */
+	private SYNTAX_ERROR lexParallel( COMPILATION_CONTEXT context ) {
+		SOURCE_BUFFER source = context.source;
+		int[] lineStarts = source.getLineStarts( );
+		int length = source.length( );
+		int chunkSize = Math.max( MIN_LEX_CHUNK, length / (4 * Runtime.getRuntime( ).availableProcessors( )) );
+		
+		ArrayList<LEX_CHUNK> chunks = new ArrayList<LEX_CHUNK>( );
+		for( int firstLine = 0; firstLine < lineStarts.length; ) {
+			int nextLine = Arrays.binarySearch( lineStarts, firstLine + 1, lineStarts.length, lineStarts[ firstLine ] + chunkSize );
+			if( nextLine < 0 )
+				nextLine = -nextLine - 1;
 			
-			// There is an interesting quirk with the "do" token in that it lacks an end-of-loop partner token
-			// LUTE struggles with identifying when a ; means "end of do" and not as part of other sequences
-			// It tries its best, but compensating for ; as part of logic makes things... interesting.
-			int doCount = 0;
+			int end = nextLine < lineStarts.length ? lineStarts[ nextLine ] : length;
+			chunks.add( new LEX_CHUNK( source, firstLine + 1, end ) );
+			firstLine = nextLine;
+		}
+		for( int ix = 1; ix < chunks.size( ); ++ix )
+			chunks.get( ix ).fork( );
+		chunks.get( 0 ).invoke( );
+		
+		int tokenNum = 0;
+		for( int ix = 0; ix < chunks.size( ); ++ix ) {
+			LEX_CHUNK chunk = chunks.get( ix );
+			chunk.join( );
 			
-			// We maintain both a 2-token look-ahead AND a 1-token look-behind just in case
-			for( int ix = 0; ix < this.tokenBuffer.size( ); ++ix ) {
-				TOKEN_META_CHUNK chunk = this.tokenBuffer.get( ix );
-				TOKEN_META_CHUNK prevChunk = (ix == 0 ? null : this.tokenBuffer.get( ix - 1) );
-				TOKEN_META_CHUNK nextChunk = (ix < this.tokenBuffer.size( ) - 1 ? this.tokenBuffer.get( ix + 1 ) : null );
-				TOKEN_META_CHUNK afterChunk = (ix < this.tokenBuffer.size( ) - 2 ? this.tokenBuffer.get( ix + 2 ) : null );
-				
-				I_TOKEN t = chunk.token;
-				
-				boolean prevTokenIsNull = prevChunk == null || prevChunk.token == null || prevChunk.line < chunk.line;
-				boolean nextTokenIsNull = nextChunk == null || nextChunk.token == null || nextChunk.line > chunk.line;
-				boolean afterTokenIsNull = afterChunk == null || afterChunk.token == null || afterChunk.line > chunk.line;
-				
-				if( !t.checkJuxtapose( prevTokenIsNull ? null : prevChunk.token, nextTokenIsNull ? null : nextChunk.token, afterTokenIsNull ? null : afterChunk.token ) ) {
-					I_TOKEN offendingToken = t.getOffendingToken( prevChunk == null ? null : prevChunk.token, nextChunk == null ? null : nextChunk.token, afterTokenIsNull ? null : afterChunk.token );
-					TOKEN_META_CHUNK offendingChunk = chunk;
-					if( offendingToken != null ) {
-						offendingChunk = prevChunk != null && offendingToken == prevChunk.token ? prevChunk : nextChunk != null && offendingToken == nextChunk.token ? nextChunk : chunk;
-						
-					}
-					//System.out.println( "[2nd Pass] Syntax Error on Line " + offendingChunk.line + " at position " + offendingChunk.startPos + ": " + offendingChunk.tokenValue );
-					System.out.println( "Line " + offendingChunk.line + " : syntax error : " + offendingChunk.tokenValue );
-					encounteredSyntaxError = true;
-					break;
-				}
-				
-				if( t.getType( ) == TOKEN_TYPE.LOGIC ) {
-					TOKEN logicToken = (TOKEN)t;
-					
-					// We increase our logic depth if we hit a new condition/loop
-					switch( logicToken ) {
-						case IF:
-						case LET:
-						case WHILE:
-							logicDepth++;
-							break;
-						case DO:
-							doCount++;
-						default:
-							break;
-					}
-					
-					if( !logicStack.isEmpty( ) ) {
-						// peek back to the last logic token at the same depth
-						Iterator<TOKEN_LOGIC_DEPTH> itr = logicStack.descendingIterator( );
-						
-						TOKEN peek = null;
-						//int peekDepth = -1;
-						while( itr.hasNext( ) ) {
-							TOKEN_LOGIC_DEPTH tld = itr.next( );
-							// we only care about tokens on the same depth
-							if( tld.depth == logicDepth ) {
-								peek = tld.token;
-								//peekDepth = tld.depth;
-								break;
-							}
-						}
-						
-						// Debug
-						//System.out.println( (peek != null ? peek.getTokenChars( )  + "\t": "(none)\t") + peekDepth + "\t" + logicToken.getTokenChars( ) + "\t" + logicDepth );
-						
-						boolean flow = true;
-						
-						//Sequence just breaks everything but we make do best we can
-						if( peek != null && peek != TOKEN.SEQUENCE ) {
-							switch( logicToken ) {
-								case THEN:
-									flow = (peek == TOKEN.IF);
-									break;
-								case ELSE:
-									flow = (peek == TOKEN.THEN);
-									break;
-								case IN:
-									flow = (peek == TOKEN.LET);
-									break;
-								case END:
-									flow = (peek == TOKEN.IN || peek == TOKEN.THEN || peek == TOKEN.DO || peek == TOKEN.END);
-									break;
-								case DO:
-									flow = (peek == TOKEN.WHILE);
-									break;
-								//case SEQUENCE:
-									//flow = (doCount <= 0) || (doCount > 0 && (peek == TOKEN.DO));
-									//break;
-								default:
-									break;
-							}
-						}
-						if( !flow ) {
-							//System.out.println( "[2nd Pass LOGIC] Syntax Error on Line " + chunk.line + " at position " + chunk.startPos + ": " + chunk.tokenValue );
-							System.out.println( "Line " + chunk.line + " : syntax error : " + chunk.tokenValue );
-							
-							encounteredSyntaxError = true;
-							break;
-						}
-						
-					}
-					logicStack.add( new TOKEN_LOGIC_DEPTH( logicToken, logicDepth ) );
-					
-					// decrement because we finished at that depth
-					switch( logicToken ) {
-						case ELSE:
-						case END:
-							--logicDepth;
-							break;
-						case SEQUENCE:
-							if( doCount > 0 )
-								--logicDepth;
-							break;
-						default:
-							break;
-					}
-					
-				}
-				
-				// We replace "do" ;'s with ENDs internally to make them recognizable
-				// during ML->C parsing. Otherwise, we'd have to attempt WAY worse
-				// logic in that phase.
-				if( t == TOKEN.SEQUENCE && doCount > 0 ) {
-					chunk.applyHackyDoEndFix( );
-					doCount--;
+			for( TOKEN_BATCH batch : chunk.batches ) {
+				for( int i = 0; i < batch.count; ++i ) {
+					I_TOKEN token = batch.tokens[ i ];
+					if( token == LUTE.UNINTERNED_ID )
+						token = context.symbols.intern( source, batch.offsets[ i ], batch.offsets[ i ] + batch.lengths[ i ] );
+					context.addToken( token, batch.offsets[ i ], batch.lengths[ i ], tokenNum + batch.nums[ i ], batch.lines[ i ], batch.starts[ i ] );
 				}
-				
-				// metadata hack for third pass
-				// the extra hack that "counters" the depth decrement for ELSE and END is
-				// just here so I don't have to debug the whole thing to ensure making a change
-				// above didn't break existing stuff. Ain't enough time to regression test.
-				chunk.logicDepth = chunk.token.getType() == TOKEN_TYPE.LOGIC ? (chunk.token == TOKEN.ELSE || chunk.token == TOKEN.END ? logicDepth + 1 : logicDepth) : logicDepth + 1;
-				
 			}
-			// debug
-			//for( TOKEN_LOGIC_DEPTH tld : logicStack )
-				//System.out.println( tld.token.getTokenChars() + "[" + tld.depth + "]" );
-			if( !encounteredSyntaxError ) {
-				//System.out.println( "parsing successful" );
-				
-				
-				// Stupid hack for stupid things
-				LinkedList<IDENTIFIER_DECLARATION_SEMANTIC_CHUNK> decStack = new LinkedList<IDENTIFIER_DECLARATION_SEMANTIC_CHUNK>( );
-				
-				
-				// We parse into C code
-				
-				// The list of tokens in the current sequence (a sub-list of all tokens)
-				ArrayList<TOKEN_META_CHUNK> seqStack = new ArrayList<TOKEN_META_CHUNK>( );
-				
-				StringBuilder cCode = new StringBuilder( );
-				cCode.append( "#include <ml-c.h>\n" );
-				cCode.append( "int main() \n" );
-				cCode.append( "{\n" );
-				
-				for( int ix = 0; ix < this.tokenBuffer.size( ); ++ix ) {
-					TOKEN_META_CHUNK chunk = this.tokenBuffer.get( ix );
-					
-					I_TOKEN t = chunk.token;
-					
-					// We look at the tokens in strings of sequences
-					// Index check is just in case we're on the last token
-					// and it isn't a ; for some reason (e.g. "DO" ; converted to END)
-					if( t != TOKEN.SEQUENCE && ix < this.tokenBuffer.size( ) - 1 ) {
-						seqStack.add( chunk );
-					}
-					else {
-						seqStack.add( chunk );
-						TOKEN_META_CHUNK[] arr = new TOKEN_META_CHUNK[ seqStack.size( ) ];
-						seqStack.toArray( arr );
-						
-						I_TOKEN[] tarr = new I_TOKEN[ arr.length ];
-						for( int arri = 0; arri < arr.length; ++arri )
-							tarr[arri] = arr[arri].token;
-						
-						MULTI_TOKEN_SEMANTIC_CHUNK mtsc = this.getSemanticChunkForTokens( arr[0].logicDepth, tarr );
-						
-						if( mtsc != null ) {
-							// indent sequence
-							for( int indents = 0; indents <= arr[0].logicDepth; ++indents )
-								cCode.append( "    " );
-							cCode.append( mtsc.toCCode( ) );
-						}
-						else {
-							// We check if subsequences of the sequence contain multi-token chunks
-							// We start from the left and head rightward, adding 1 token at a time
-							// If we get nothing by the end, pop off the leftmost token, parse it,
-							// and try again
-							while( seqStack.size( ) > 1 ) {
-								for( int subEnd = 1; subEnd <= seqStack.size( ); ++subEnd ) {
-									List<TOKEN_META_CHUNK> subStack = seqStack.subList( 0, subEnd );
-									arr = new TOKEN_META_CHUNK[ subStack.size( ) ];
-									subStack.toArray( arr );
-									
-									tarr = new I_TOKEN[ arr.length ];
-									for( int arri = 0; arri < arr.length; ++arri )
-										tarr[arri] = arr[arri].token;
-									
-									mtsc = this.getSemanticChunkForTokens( arr[0].logicDepth, tarr );
-									if( mtsc != null ) {
-										if( mtsc instanceof IDENTIFIER_DECLARATION_SEMANTIC_CHUNK )
-											decStack.add( (IDENTIFIER_DECLARATION_SEMANTIC_CHUNK)mtsc );
-										
-										else if( mtsc instanceof ID_LIST_CON_SEMANTIC_CHUNK ) {
-											ID_LIST_CON_SEMANTIC_CHUNK ilcsc = (ID_LIST_CON_SEMANTIC_CHUNK)mtsc;
-											I_TOKEN conToken = ilcsc.getConToken( );
-											for( IDENTIFIER_DECLARATION_SEMANTIC_CHUNK idsc : decStack ) {
-												if( idsc.identifier.getTokenChars( ).equals( conToken.getTokenChars( )) ) {
-													if( idsc.getTypeAsCCode( ).equals("float") ) {
-														ilcsc.setAsFloat( );
-														break;
-													}
-												}
-											}
-										}
-										
-										// tab if newline 
-										if( cCode.substring( cCode.length() - 2 ).contains( "\n" ) ) {
-											for( int indents = 0; indents <= arr[0].logicDepth; ++indents )
-												cCode.append( "    " );
-												
-										}
-										cCode.append( mtsc.toCCode( ) );
-										if( seqStack.size( ) > 1 )
-											cCode.append( " " );
-										subEnd = 1;
-										subStack.clear( );
-									}
-										
-								}
-								if( mtsc == null ) {
-									TOKEN_META_CHUNK firstChunk = seqStack.remove( 0 );
-									I_TOKEN firstToken = firstChunk.token;
-									if( firstToken == TOKEN.END ) {
-										if( !cCode.substring( cCode.length() - 2 ).contains( ";" ) )
-											cCode.append( ";" );
-										cCode.append( "\n" );
-									}
-									String asC = firstToken.toCCode( );
-									if( !asC.isEmpty( ) ) {
-										// tab if newline 
-										if( cCode.substring( cCode.length() - 2 ).contains( "\n" ) ) {
-											for( int indents = 0; indents <= firstChunk.logicDepth; ++indents )
-												cCode.append( "    " );
-												
-										}
-										cCode.append( asC );
-										if( firstToken == TOKEN.END ) {
-											if( !cCode.substring( cCode.length() - 2 ).contains( ";" ) )
-												cCode.append( ";" );
-											cCode.append( "\n" );
-										}
-										if( !asC.contains( "\n" ) && firstToken != TOKEN.END )
-											cCode.append( " " );
-									}
-								}
-							}
-							// Leave no token behind
-							if( !seqStack.isEmpty( ) ) {
-								for( TOKEN_META_CHUNK seqChunk : seqStack ) {	
-									// Cheaty hack to resolve some issues with ; and }
-									if( seqChunk.token == TOKEN.SEQUENCE ) {
-										if( cCode.substring( cCode.length() - 2 ).contains( ";" ) )
-											continue;
-									}
-									if( seqChunk.token == TOKEN.END ) {
-										if( !cCode.substring( cCode.length() - 2 ).contains( ";" ) )
-											cCode.append( ";" );
-										cCode.append( "\n" );
-									}
-									String asC = seqChunk.token.toCCode( );
-									if( !asC.isEmpty( ) ) {
-										// tab if newline 
-										if( cCode.substring( cCode.length() - 2 ).contains( "\n" ) ) {
-											for( int indents = 0; indents <= seqChunk.logicDepth; ++indents )
-												cCode.append( "    " );
-												
-										}
-										cCode.append( asC );
-										if( seqStack.indexOf( seqChunk ) < seqStack.size() - 1 )
-											cCode.append( " " );
-										else if( seqChunk.token == TOKEN.END )
-											cCode.append( "\n" );
-									}
-								}
-							}
-						}
-						
-						if( !cCode.substring( cCode.length() - 2 ).contains( ";" ) )
-							cCode.append( ";" );
-						
-						seqStack.clear( );
-					}
-				}
-				
-				if( !cCode.substring( cCode.length() - 2 ).contains( "\n" ) )
-					cCode.append( "\n" );
-				cCode.append( "}" );
-				
-				System.out.println( cCode.toString( ) );
-				
+			chunk.batches = null;
+			tokenNum += chunk.tokenNums;
+			
+			if( chunk.syntaxError != null ) {
+				for( int rest = ix + 1; rest < chunks.size( ); ++rest )
+					chunks.get( rest ).cancel( false );
+				return chunk.syntaxError;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Groups of items are at least this many instructions, so small programs are written in one go
+	 */
+	public static final int MIN_EMIT_GROUP = 4096;
+	
+	/**
+	 * The third pass, with groups of whole items of the program written out as C at the same time, then
+	 * stitched together in order. What an item declares is already settled in its slots (see
+	 * @LINEAR_IR), so the only thing one item's C depends on from the last is how that ended, as far
+	 * as @C_EMITTER.endsNear can tell. Each group guesses it ended the way items usually do, and if that
+	 * turns out wrong the group is written again in place, so the C is always the same as @emitCCode
+	 * writes.
+	 */
+	private void emitParallel( C_EMITTER out, LINEAR_IR ir ) throws IOException {
+		int cores = Runtime.getRuntime( ).availableProcessors( );
+		int groupSize = Math.max( MIN_EMIT_GROUP, ir.size( ) / (4 * cores) );
+		
+		// groups end after an item's last instruction, its OP_SEQ
+		ArrayList<EMIT_GROUP> groups = new ArrayList<EMIT_GROUP>( );
+		for( int from = 0, ix = 0; ix < ir.size( ); ++ix ) {
+			if( ix == ir.size( ) - 1 || (ix + 1 - from >= groupSize && ir.is( ix, LINEAR_IR.STATEMENT )) ) {
+				// an item's C ends with its ; token's, or a loop's end
+				String after = groups.isEmpty( ) ? out.getTail( ) : TOKEN.SEQUENCE.toCCode( );
+				groups.add( new EMIT_GROUP( ir, from, ix + 1, after, ix == ir.size( ) - 1 ) );
+				from = ix + 1;
 			}
+		}
+		
+		// only so many groups' C is kept waiting at once
+		int ahead = 2 * cores;
+		for( int ix = 0; ix < ahead && ix < groups.size( ); ++ix )
+			groups.get( ix ).fork( );
+		
+		for( int ix = 0; ix < groups.size( ); ++ix ) {
+			if( ix + ahead < groups.size( ) )
+				groups.get( ix + ahead ).fork( );
 			
+			EMIT_GROUP group = groups.get( ix );
+			group.join( );
+			if( out.endsLike( group.after ) )
+				out.append( group.code );
+			else
+				LUTE.emitCCode( out, ir, group.from, group.to, group.ending );
+			group.code = null;
 		}
 	}
 	
@@ -497,6 +491,26 @@ public class LUTE {
 		OTHER;
 	}
 	
+	/**
+	 * Dense int ids for every kind of token, so a token can be stored as a plain int.	<br />
+	 * The @TOKEN constants use their ordinals, the dynamic tokens are numbered after them.
+	 */
+	public static final int KIND_ID = TOKEN.values( ).length;
+	public static final int KIND_INT = KIND_ID + 1;
+	public static final int KIND_FLOAT = KIND_ID + 2;
+	public static final int KIND_BOOL = KIND_ID + 3;
+	public static final int KIND_UNIT = KIND_ID + 4;
+	public static final int KIND_INT_ARRAY = KIND_ID + 5;
+	public static final int KIND_FLOAT_ARRAY = KIND_ID + 6;
+	public static final int KIND_ERROR = KIND_ID + 7;
+	public static final int KIND_EOF = KIND_ID + 8;
+	public static final int KIND_COUNT = KIND_ID + 9;
+	
+	/**
+	 * Stands in for no token at all: before the first, after the last, or (for juxtaposition) on another line
+	 */
+	public static final int KIND_NONE = KIND_COUNT;
+	
 	/**
 	 * A common interface used to attribute relativity between the static @TOKEN tokens and dynamic ID/INT/FLOAT tokens
 	 */
@@ -506,6 +520,11 @@ public class LUTE {
 		abstract String getTokenName( );
 		abstract String getTokenChars( );
 		
+		/**
+		 * Returns the token's dense kind id, see @KIND_ID
+		 */
+		abstract int getKind( );
+		
 		/**
 		 * Checks if the token is valid in context of the previous and following tokens
 		 */
@@ -529,12 +548,32 @@ public class LUTE {
 	/**
 	 * A token representing an identifier of some kind
 	 */
-	public class ID_TOKEN implements I_TOKEN {
+	public static class ID_TOKEN implements I_TOKEN {
 
-		private String chars;
+		// usually a view of the source, only turned into a String when someone asks for one
+		private CharSequence chars;
 		
-		public ID_TOKEN( String s ) {
+		// dense id handed out by the SYMBOL_TABLE, -1 if not interned
+		private int symbol = -1;
+		
+		public ID_TOKEN( CharSequence s ) {
+			this.chars = s;
+		}
+		
+		public ID_TOKEN( CharSequence s, int symbol ) {
 			this.chars = s;
+			this.symbol = symbol;
+		}
+		
+		public int getSymbol( ) {
+			return this.symbol;
+		}
+		
+		/**
+		 * The identifier's chars without forcing them into a String
+		 */
+		public CharSequence getChars( ) {
+			return this.chars;
 		}
 		
 		@Override 
@@ -544,12 +583,14 @@ public class LUTE {
 		
 		@Override
 		public boolean is( String t ) {
-			return this.chars.equals( t );
+			return t != null && t.contentEquals( this.chars );
 		}
 		
 		@Override
 		public String getTokenChars( ) {
-			return this.chars;
+			if( !(this.chars instanceof String) )
+				this.chars = this.chars.toString( );
+			return (String)this.chars;
 		}
 		
 		@Override
@@ -557,6 +598,11 @@ public class LUTE {
 			return "ID";
 		}
 		
+		@Override
+		public int getKind( ) {
+			return KIND_ID;
+		}
+		
 		@Override
 		public boolean checkJuxtapose( I_TOKEN priorToken, I_TOKEN nextToken, I_TOKEN afterToken ) { 
 			return (priorToken == null || !(priorToken instanceof ID_TOKEN)) && (nextToken == null || !(nextToken instanceof ID_TOKEN));
@@ -576,7 +622,7 @@ public class LUTE {
 	/**
 	 * A token representing an integer value
 	 */
-	public class INT_TOKEN implements I_VALUE_TOKEN {
+	public static class INT_TOKEN implements I_VALUE_TOKEN {
 
 		private int value;
 		
@@ -627,6 +673,11 @@ public class LUTE {
 			return "INT";
 		}
 		
+		@Override
+		public int getKind( ) {
+			return KIND_INT;
+		}
+		
 		@Override
 		public boolean checkJuxtapose( I_TOKEN priorToken, I_TOKEN nextToken, I_TOKEN afterToken ) {
 			// Just for now
@@ -647,7 +698,7 @@ public class LUTE {
 	/**
 	 * A token representing a float value
 	 */
-	public class FLOAT_TOKEN implements I_VALUE_TOKEN {
+	public static class FLOAT_TOKEN implements I_VALUE_TOKEN {
 		
 		private float value;
 		
@@ -698,6 +749,11 @@ public class LUTE {
 			return "FLOAT";
 		}
 		
+		@Override
+		public int getKind( ) {
+			return KIND_FLOAT;
+		}
+		
 		@Override
 		public boolean checkJuxtapose( I_TOKEN priorToken, I_TOKEN nextToken, I_TOKEN afterToken ) {
 			// Just for now
@@ -718,7 +774,7 @@ public class LUTE {
 	/**
 	 * A token representing a boolean value
 	 */
-	public class BOOL_TOKEN implements I_VALUE_TOKEN {
+	public static class BOOL_TOKEN implements I_VALUE_TOKEN {
 		
 		private boolean value;
 		
@@ -769,6 +825,11 @@ public class LUTE {
 			return "BOOL";
 		}
 		
+		@Override
+		public int getKind( ) {
+			return KIND_BOOL;
+		}
+		
 		@Override
 		public boolean checkJuxtapose( I_TOKEN priorToken, I_TOKEN nextToken, I_TOKEN afterToken ) {
 			// Just for now
@@ -789,7 +850,7 @@ public class LUTE {
 	/**
 	 * A token representing a unit value
 	 */
-	public class UNIT_TOKEN implements I_VALUE_TOKEN {
+	public static class UNIT_TOKEN implements I_VALUE_TOKEN {
 		
 		private final String value = "()";
 		
@@ -831,6 +892,11 @@ public class LUTE {
 			return "UNIT";
 		}
 		
+		@Override
+		public int getKind( ) {
+			return KIND_UNIT;
+		}
+		
 		@Override
 		public boolean checkJuxtapose( I_TOKEN priorToken, I_TOKEN nextToken, I_TOKEN afterToken ) {
 			// Just for now
@@ -848,18 +914,25 @@ public class LUTE {
 		}
 	}
 	
-	public final String INT_ARRAY_TOKEN_NAME = "TypeList#TypeInt";
-	public class INT_ARRAY_TOKEN implements I_VALUE_TOKEN {
+	public static final String INT_ARRAY_TOKEN_NAME = "TypeList#TypeInt";
+	public static class INT_ARRAY_TOKEN implements I_VALUE_TOKEN {
 
 		private int[] value = null;
 		
+		// the list as written in the source
+		private CharSequence chars = "[]";
+		
 		public INT_ARRAY_TOKEN( String s ) {
-			s = s.substring( 1, s.length() - 1 );
-			String[] as = s.split( "," );
-			int[] i = new int[ as.length ];
-			for( int ix = 0; ix < as.length; ++ix )
-				i[ix] = Integer.valueOf( as[ix] );
-			this.value = Arrays.copyOf( i, i.length );
+			LITERAL_SCAN scan = new LITERAL_SCAN( null );
+			if( scan.scan( s, 0, s.length( ) ) != s.length( ) || scan.kind != LITERAL_SCAN.INT_ARRAY )
+				throw new NumberFormatException( "For input string: \"" + s + "\"" );
+			this.value = scan.getIntList( );
+			this.chars = s;
+		}
+		
+		public INT_ARRAY_TOKEN( int[] value, CharSequence chars ) {
+			this.value = value;
+			this.chars = chars;
 		}
 		
 		public INT_ARRAY_TOKEN( ) {
@@ -907,10 +980,15 @@ public class LUTE {
 		public String getTokenName() {
 			return "INT_ARRAY";
 		}
+		
+		@Override
+		public int getKind() {
+			return KIND_INT_ARRAY;
+		}
 
 		@Override
 		public String getTokenChars() {
-			return Arrays.toString( this.value ).replace( " ", "" );
+			return this.chars.toString( );
 		}
 
 		@Override
@@ -928,9 +1006,9 @@ public class LUTE {
 		public String toCCode( ) {
 			if( this.value == null )
 				return "0";
-			StringBuilder sb = new StringBuilder( );
+			StringBuilder sb = new StringBuilder( this.value.length * 20 );
 			for( int ix = 0; ix < this.value.length; ++ix ) {
-				sb.append( "new list<int>(" + this.value[ix] + "," );
+				sb.append( "new list<int>(" ).append( this.value[ix] ).append( ',' );
 			}
 			sb.append( "0)" );
 			for( int ix = 0; ix < this.value.length - 1; ++ix )
@@ -939,18 +1017,25 @@ public class LUTE {
 		}
 	}
 	
-	public final String FLOAT_ARRAY_TOKEN_NAME = "TypeList#TypeFloat";
-	public class FLOAT_ARRAY_TOKEN implements I_VALUE_TOKEN {
+	public static final String FLOAT_ARRAY_TOKEN_NAME = "TypeList#TypeFloat";
+	public static class FLOAT_ARRAY_TOKEN implements I_VALUE_TOKEN {
 
 		private float[] value;
 		
+		// the list as written in the source
+		private CharSequence chars;
+		
 		public FLOAT_ARRAY_TOKEN( String s ) {
-			s = s.substring( 1, s.length() - 1 );
-			String[] as = s.split( "," );
-			float[] i = new float[ as.length ];
-			for( int ix = 0; ix < as.length; ++ix )
-				i[ix] = Float.valueOf( as[ix] );
-			this.value = Arrays.copyOf( i, i.length );
+			LITERAL_SCAN scan = new LITERAL_SCAN( null );
+			if( scan.scan( s, 0, s.length( ) ) != s.length( ) || scan.kind != LITERAL_SCAN.FLOAT_ARRAY )
+				throw new NumberFormatException( "For input string: \"" + s + "\"" );
+			this.value = scan.getFloatList( );
+			this.chars = s;
+		}
+		
+		public FLOAT_ARRAY_TOKEN( float[] value, CharSequence chars ) {
+			this.value = value;
+			this.chars = chars;
 		}
 		
 		public float[] getValue( ) {
@@ -994,10 +1079,15 @@ public class LUTE {
 		public String getTokenName() {
 			return "FLOAT_ARRAY";
 		}
+		
+		@Override
+		public int getKind() {
+			return KIND_FLOAT_ARRAY;
+		}
 
 		@Override
 		public String getTokenChars() {
-			return Arrays.toString( this.value ).replace( " ", "" );
+			return this.chars.toString( );
 		}
 
 		@Override
@@ -1013,9 +1103,9 @@ public class LUTE {
 		
 		@Override
 		public String toCCode( ) {
-			StringBuilder sb = new StringBuilder( );
+			StringBuilder sb = new StringBuilder( this.value.length * 24 );
 			for( int ix = 0; ix < this.value.length; ++ix ) {
-				sb.append( "new list<float>(" + this.value[ix] + "," );
+				sb.append( "new list<float>(" ).append( this.value[ix] ).append( ',' );
 			}
 			sb.append( "0)" );
 			for( int ix = 0; ix < this.value.length - 1; ++ix )
@@ -1024,8 +1114,8 @@ public class LUTE {
 		}
 	}
 	
-	public final String ERROR_TOKEN_TYPE = "TypeError";
-	public class ERROR_TOKEN implements I_VALUE_TOKEN {
+	public static final String ERROR_TOKEN_TYPE = "TypeError";
+	public static class ERROR_TOKEN implements I_VALUE_TOKEN {
 
 		@Override
 		public TOKEN_TYPE getType() {
@@ -1041,6 +1131,11 @@ public class LUTE {
 		public String getTokenName() {
 			return "ERROR";
 		}
+		
+		@Override
+		public int getKind() {
+			return KIND_ERROR;
+		}
 
 		@Override
 		public String getTokenChars() {
@@ -1083,7 +1178,7 @@ public class LUTE {
 	 * Token class for the singleton "End Of File" token.
 	 *
 	 */
-	public class EOF_TOKEN implements I_TOKEN {
+	public static class EOF_TOKEN implements I_TOKEN {
 		
 		public EOF_TOKEN( String s ) { }
 		
@@ -1107,6 +1202,11 @@ public class LUTE {
 			return "EOF";
 		}
 		
+		@Override
+		public int getKind( ) {
+			return KIND_EOF;
+		}
+		
 		@Override
 		public boolean checkJuxtapose( I_TOKEN priorToken, I_TOKEN nextToken, I_TOKEN afterToken ) {
 			return nextToken == null;
@@ -1124,7 +1224,46 @@ public class LUTE {
 		
 	}
 	
-	public final EOF_TOKEN EOF = new EOF_TOKEN( null );
+	public static final EOF_TOKEN EOF = new EOF_TOKEN( null );
+	
+	/*
+	 * Value tokens that carry no position are immutable, so the common ones are shared rather
+	 * than created for every occurrence
+	 */
+	public static final BOOL_TOKEN TRUE = new BOOL_TOKEN( true );
+	public static final BOOL_TOKEN FALSE = new BOOL_TOKEN( false );
+	public static final UNIT_TOKEN UNIT = new UNIT_TOKEN( null );
+	
+	/**
+	 * Stands in for an identifier lexed off on another thread, until it's interned (see @lexParallel)
+	 */
+	public static final ID_TOKEN UNINTERNED_ID = new ID_TOKEN( "" );
+	public static final ERROR_TOKEN ERROR = new ERROR_TOKEN( );
+	
+	public static final int INT_CACHE_LOW = -128;
+	public static final int INT_CACHE_HIGH = 1023;
+	private static final INT_TOKEN[] INT_CACHE = new INT_TOKEN[ INT_CACHE_HIGH - INT_CACHE_LOW + 1 ];
+	static {
+		// made up front, so every compilation can share them without any locking
+		for( int i = INT_CACHE_LOW; i <= INT_CACHE_HIGH; ++i )
+			INT_CACHE[ i - INT_CACHE_LOW ] = new INT_TOKEN( i );
+	}
+	
+	/**
+	 * Returns an INT_TOKEN for the value, shared for small values
+	 */
+	public static INT_TOKEN intToken( int i ) {
+		if( i < INT_CACHE_LOW || i > INT_CACHE_HIGH )
+			return new INT_TOKEN( i );
+		return INT_CACHE[ i - INT_CACHE_LOW ];
+	}
+	
+	/**
+	 * Returns the shared BOOL_TOKEN for the value
+	 */
+	public static BOOL_TOKEN boolToken( boolean b ) {
+		return b ? LUTE.TRUE : LUTE.FALSE;
+	}
 	
 	/**
 	 * An enumeration of default/reserved tokens in SML and BN grammar
@@ -1219,6 +1358,11 @@ public class LUTE {
 			return this.name( );
 		}
 		
+		@Override
+		public int getKind( ) {
+			return this.ordinal( );
+		}
+		
 		@Override
 		public String toCCode( ) {
 			return this.cEquiv;
@@ -1282,11 +1426,17 @@ public class LUTE {
 		}
 		
 		private boolean operatorJuxtapose( I_TOKEN priorToken, I_TOKEN nextToken ) {
+			// an operator needs something before it, and one after a value needs something after it
+			// too; otherwise (e.g. "=" at the end of the line) the rules below go as they are
+			if( priorToken == null )
+				return false;
+			
 			boolean valid = 
 					(priorToken.getType( ) == TOKEN_TYPE.VALUE ||
 					 priorToken.getType( ) == TOKEN_TYPE.GROUP_RIGHT ||
 					 priorToken == TOKEN.HEAD || priorToken == TOKEN.TAIL) &&
 					 
+					nextToken != null &&
 					(nextToken.getType( ) == TOKEN_TYPE.VALUE ||
 					 nextToken == TOKEN.SUB || nextToken == TOKEN.HEAD || nextToken == TOKEN.TAIL || nextToken == TOKEN.READ_REF ||
 					 nextToken.getType( ) == TOKEN_TYPE.GROUP_LEFT);
@@ -1302,625 +1452,5514 @@ public class LUTE {
 		
 		private I_TOKEN operatorOffendingToken( I_TOKEN priorToken, I_TOKEN nextToken ) {
 			return
-				!(priorToken.getType( ) == TOKEN_TYPE.TYPE || priorToken instanceof INT_TOKEN || priorToken instanceof FLOAT_TOKEN || priorToken instanceof ID_TOKEN) ?
+				priorToken != null && !(priorToken.getType( ) == TOKEN_TYPE.TYPE || priorToken instanceof INT_TOKEN || priorToken instanceof FLOAT_TOKEN || priorToken instanceof ID_TOKEN) ?
 						priorToken :
-						!(nextToken.getType( ) == TOKEN_TYPE.LOGICOP || nextToken instanceof INT_TOKEN || nextToken instanceof FLOAT_TOKEN || nextToken instanceof ID_TOKEN) ?
+						nextToken != null && !(nextToken.getType( ) == TOKEN_TYPE.LOGICOP || nextToken instanceof INT_TOKEN || nextToken instanceof FLOAT_TOKEN || nextToken instanceof ID_TOKEN) ?
 								nextToken :
 								null;
 		}
 		
-		public boolean partialMatch( String t ) {
-			return this.chars.startsWith( t );
+		private static final TOKEN[] BY_KIND = TOKEN.values( );
+		
+		/**
+		 * Returns the token with the given kind id, or null if the kind isn't one of ours
+		 */
+		public static TOKEN ofKind( int kind ) {
+			return kind >= 0 && kind < BY_KIND.length ? BY_KIND[ kind ] : null;
 		}
 		
-		public boolean partialMatchReverse( String t ) {
-			return this.chars.endsWith( t );
+		/*
+		 * Prefix trie over the chars of every token, built once when the enum is loaded.
+		 * The lexer feeds it one character at a time instead of re-scanning values( ) for
+		 * every character it reads.
+		 */
+		
+		/**
+		 * The state to start (or restart) walking the trie from
+		 */
+		public static final int TRIE_ROOT = 0;
+		
+		/**
+		 * The state reached once the characters walked can no longer be the start of any token
+		 */
+		public static final int TRIE_DEAD = -1;
+		
+		private static final int TRIE_WIDTH = 128;
+		
+		private static final TOKEN_TRIE forward = new TOKEN_TRIE( );
+		
+		/**
+		 * Advances the forward trie by a single character.
+		 *
+		 * @param state		The current state, TRIE_ROOT for a new token
+		 * @param c			The character read
+		 * @return			The next state, or TRIE_DEAD if no token starts with the characters walked
+		 */
+		public static int advance( int state, char c ) {
+			if( state == TRIE_DEAD || c >= TRIE_WIDTH )
+				return TRIE_DEAD;
+			return TOKEN.forward.next[ state * TRIE_WIDTH + c ];
 		}
 		
-		public static TOKEN find( String t ) {
-			for( TOKEN token : TOKEN.values( ) ) {
-				if( token.is(t) ) return token;
-			}
-			return null;
+		/**
+		 * Returns the token whose chars are exactly the characters walked to reach the state, if any
+		 */
+		public static TOKEN accepted( int state ) {
+			return state == TRIE_DEAD ? null : TOKEN.forward.accept[ state ];
 		}
 		
-		public static boolean hasMultipleMatches( String t ) {
-			return TOKEN.hasMultipleMatches( t, false );
+		/**
+		 * Whether more than one token could still be completed from the state, i.e. we have to keep
+		 * reading to know which one we have (e.g. : vs :: vs ::=)
+		 */
+		public static boolean isAmbiguous( int state ) {
+			return state != TRIE_DEAD && TOKEN.forward.ambiguous[ state ];
 		}
 		
-		public static boolean hasMultipleMatches( String t, boolean reverse ) {
-			// Because LUTE is stupid and doesn't realize arrays are a thing 
-			// if the only thing on the line is an array
-			final Pattern groupMatcher = Pattern.compile( "(\\(|\\[|\\)|\\])" );
-			if( groupMatcher.matcher( t ).matches( ) ) return true;
+		/**
+		 * Flattened transition table for the trie, built from the token chars
+		 */
+		private static final class TOKEN_TRIE {
+			private int[] next;
+			private TOKEN[] accept;
+			private boolean[] ambiguous;
 			
-			int count = 0;
-			for( TOKEN token : TOKEN.values( ) ) {
-				if( reverse ? token.partialMatchReverse( t ) : token.partialMatch( t ) )
-					count++;
+			private TOKEN_TRIE( ) {
+				// Upper bound on the number of states is one per char of every token, plus the root
+				int maxStates = 1;
+				for( TOKEN token : TOKEN.values( ) )
+					maxStates += token.chars.length( );
+				
+				this.next = new int[ maxStates * TRIE_WIDTH ];
+				Arrays.fill( this.next, TRIE_DEAD );
+				this.accept = new TOKEN[ maxStates ];
+				int[] matches = new int[ maxStates ];
+				int states = 1;
+				
+				for( TOKEN token : TOKEN.values( ) ) {
+					String s = token.chars;
+					int state = TRIE_ROOT;
+					for( int ix = 0; ix < s.length( ); ++ix ) {
+						int slot = state * TRIE_WIDTH + s.charAt( ix );
+						if( this.next[ slot ] == TRIE_DEAD )
+							this.next[ slot ] = states++;
+						state = this.next[ slot ];
+						// every token passing through a state is a partial match for its prefix
+						matches[ state ]++;
+					}
+					// the first token wins, as it always has (e.g. "!" is READ_REF)
+					if( this.accept[ state ] == null )
+						this.accept[ state ] = token;
+				}
+				
+				this.ambiguous = new boolean[ states ];
+				// nothing read yet, so every token is still a candidate
+				this.ambiguous[ TRIE_ROOT ] = TOKEN.values( ).length > 1;
+				for( int state = 1; state < states; ++state )
+					this.ambiguous[ state ] = matches[ state ] > 1;
+				
+				// Because LUTE is stupid and doesn't realize arrays are a thing
+				// if the only thing on the line is an array
+				for( char group : new char[]{ '(', '[', ')', ']' } )
+					this.ambiguous[ this.next[ TRIE_ROOT * TRIE_WIDTH + group ] ] = true;
 			}
-			return count > 1;
 		}
 	}
 	
-	// Regex for determining if a string correlates to an identifier, an integer, or a float
-	private Pattern idPattern = Pattern.compile("^[a-zA-Z_][a-zA-Z0-9_]*$");
-	private Pattern intPattern = Pattern.compile("^-?[0-9]+$");
-	private Pattern intArrayPattern = Pattern.compile("^\\[-?[0-9]+([,]-?[0-9]+)*\\]$");
-	private Pattern floatPattern = Pattern.compile("^-?[0-9]+[.][0-9]+$");
-	private Pattern floatArrayPattern = Pattern.compile("^\\[-?[0-9]+[.][0-9]+([,]-?[0-9]+[.][0-9]+)*\\]$");
-	private Pattern emptyArrayPattern = Pattern.compile("^\\[\\]$");
-	// these are probably overkill but what the heck
-	private Pattern boolPattern = Pattern.compile( "^(true | false)$" );
-	private Pattern unitPattern = Pattern.compile( "^\\(\\)$" );
-	
-	/**
-	 * Searches for a valid token for the supplied character string.
-	 * 
-	 * @param t							The character string to look up
-	 * @param currentCharIsDelimiter	Whether or not the last character read was a delimiter (and thus excluded)
-	 * @return							The token, or null if no token or there are multiple matches and we haven't
-	 * 									hit a delimiter
+	/*
+	 * Character classes for reading identifiers, numbers etc. without regex
 	 */
-	public I_TOKEN getToken( String t, boolean currentCharIsDelimiter ) {
-		return this.getToken(t, currentCharIsDelimiter, false );
+	private static final byte CC_ID_START = 1;
+	private static final byte CC_ID_PART = 2;
+	private static final byte CC_DIGIT = 4;
+	
+	private static final byte[] CHAR_CLASSES = new byte[ 128 ];
+	static {
+		for( char c = 'a'; c <= 'z'; ++c )
+			CHAR_CLASSES[ c ] = CC_ID_START | CC_ID_PART;
+		for( char c = 'A'; c <= 'Z'; ++c )
+			CHAR_CLASSES[ c ] = CC_ID_START | CC_ID_PART;
+		for( char c = '0'; c <= '9'; ++c )
+			CHAR_CLASSES[ c ] = CC_ID_PART | CC_DIGIT;
+		CHAR_CLASSES[ '_' ] = CC_ID_START | CC_ID_PART;
+	}
+	
+	private static boolean hasClass( char c, byte charClass ) {
+		return c < CHAR_CLASSES.length && (CHAR_CLASSES[ c ] & charClass) != 0;
 	}
 	
+	// Powers of ten a float holds exactly, for parsing short decimals without Float.parseFloat
+	private static final float[] FLOAT_POWERS_OF_TEN = { 1e0F, 1e1F, 1e2F, 1e3F, 1e4F, 1e5F, 1e6F, 1e7F, 1e8F, 1e9F, 1e10F };
+	
 	/**
-	 * Searches for a valid token for the supplied character string.
+	 * Reads the literal (identifier, int, float, list, bool or unit) at the front of a run of characters
+	 * in one pass, parsing its value on the way. <br />
+	 * Stands in for the old chain of literal regexes:												<br /><br />
 	 * 
-	 * @param t							The character string to look up
-	 * @param currentCharIsDelimiter	Whether or not the last character read was a delimiter (and thus excluded)
-	 * @param reverse					Whether or not the partial match check compares from the end
-	 * @return							The token, or null if no token or there are multiple matches and we haven't
-	 * 									hit a delimiter
-	 */
-	public I_TOKEN getToken( String t, boolean currentCharIsDelimiter, boolean reverse ) {
-		I_TOKEN token;
-		
-		// Check for case where partial of one token counts as a full other token (e.g. :: and ::=)
-		// This only matters if we haven't reached a delimiter character (e.g. space)
-		if( !currentCharIsDelimiter ) {
-			if( TOKEN.hasMultipleMatches( t, reverse ) )
-				return null;
+	 * ID			[a-zA-Z_][a-zA-Z0-9_]*														<br />
+	 * INT			-?[0-9]+																	<br />
+	 * FLOAT		-?[0-9]+[.][0-9]+															<br />
+	 * INT_ARRAY	\[-?[0-9]+([,]-?[0-9]+)*\] (or [])										<br />
+	 * FLOAT_ARRAY	\[-?[0-9]+[.][0-9]+([,]-?[0-9]+[.][0-9]+)*\]								<br />
+	 * BOOL			true|false																	<br />
+	 * UNIT			()
+	 */
+	public static class LITERAL_SCAN {
+		public static final int NONE = 0;
+		public static final int ID = 1;
+		public static final int INT = 2;
+		public static final int FLOAT = 3;
+		public static final int INT_ARRAY = 4;
+		public static final int FLOAT_ARRAY = 5;
+		public static final int EMPTY_ARRAY = 6;
+		public static final int BOOL = 7;
+		public static final int UNIT = 8;
+		
+		// What the last scan found
+		public int kind;
+		public int end;
+		public int intValue;
+		public float floatValue;
+		public boolean boolValue;
+		
+		// Where the last scan was, so tokenAt( ) can tell if it's still valid
+		private CharSequence text;
+		private int from;
+		
+		// Scratch for scanNumber( )
+		private int numberKind;
+		
+		// Where the last scan came across an int literal too big for an int (which isn't a literal at
+		// all, so the lexer can blame it by name), or -1 if it didn't
+		public int outOfRangeFrom = -1;
+		public int outOfRangeTo;
+		
+		// where identifiers are interned, or null for them all to come out as UNINTERNED_ID, for whoever
+		// reads them in order to intern
+		private final SYMBOL_TABLE symbols;
+		
+		public LITERAL_SCAN( SYMBOL_TABLE symbols ) {
+			this.symbols = symbols;
+		}
+		
+		// The elements of the last list scanned, grown as needed
+		private int[] intList = new int[ 16 ];
+		private float[] floatList = new float[ 16 ];
+		private int listLength;
+		
+		/**
+		 * Forgets the last scan, ready for another source, letting go of the lists if they've grown past
+		 * capacity elements
+		 */
+		public void reset( int capacity ) {
+			this.text = null;
+			this.kind = NONE;
+			this.outOfRangeFrom = -1;
+			this.listLength = 0;
+			if( this.intList.length > capacity ) {
+				this.intList = new int[ 16 ];
+				this.floatList = new float[ 16 ];
+			}
+		}
+		
+		/**
+		 * Finds the longest literal starting at from.
+		 * 
+		 * @param t			The characters to read
+		 * @param from		Where the literal would start
+		 * @param to		Where the run of characters ends
+		 * @return			Where the literal ends (exclusive), or from if there isn't one
+		 */
+		public int scan( CharSequence t, int from, int to ) {
+			this.text = t;
+			this.from = from;
+			this.kind = NONE;
+			this.end = from;
+			this.outOfRangeFrom = -1;
+			if( from >= to )
+				return from;
+			
+			char c = t.charAt( from );
+			if( LUTE.hasClass( c, CC_ID_START ) ) {
+				int ix = from + 1;
+				while( ix < to && LUTE.hasClass( t.charAt( ix ), CC_ID_PART ) )
+					ix++;
+				this.end = ix;
+				this.kind = ID;
+				if( LUTE.sameChars( t, from, ix, "true" ) || LUTE.sameChars( t, from, ix, "false" ) ) {
+					this.kind = BOOL;
+					this.boolValue = ix - from == 4;
+				}
+			}
+			else if( c == '-' || LUTE.hasClass( c, CC_DIGIT ) ) {
+				int ix = this.scanNumber( t, from, to, true );
+				if( this.numberKind != NONE ) {
+					this.end = ix;
+					this.kind = this.numberKind;
+				}
+			}
+			else if( c == '[' ) {
+				this.scanList( t, from, to );
+			}
+			else if( c == '(' && from + 1 < to && t.charAt( from + 1 ) == ')' ) {
+				this.end = from + 2;
+				this.kind = UNIT;
+			}
+			return this.end;
+		}
+		
+		/**
+		 * Builds the token for what the last scan found
+		 */
+		public I_TOKEN toToken( ) {
+			switch( this.kind ) {
+				case ID:
+					if( this.symbols == null )
+						return LUTE.UNINTERNED_ID;
+					return this.symbols.intern( this.text, this.from, this.end );
+				case INT:
+					return LUTE.intToken( this.intValue );
+				case FLOAT:
+					return new FLOAT_TOKEN( this.floatValue );
+				case INT_ARRAY:
+					return new INT_ARRAY_TOKEN( this.getIntList( ), this.text.subSequence( this.from, this.end ) );
+				case FLOAT_ARRAY:
+					return new FLOAT_ARRAY_TOKEN( this.getFloatList( ), this.text.subSequence( this.from, this.end ) );
+				case EMPTY_ARRAY:
+					return new INT_ARRAY_TOKEN( );
+				case BOOL:
+					return LUTE.boolToken( this.boolValue );
+				case UNIT:
+					return LUTE.UNIT;
+				default:
+					return null;
+			}
+		}
+		
+		/**
+		 * Returns a copy of the elements of the last INT_ARRAY scanned
+		 */
+		public int[] getIntList( ) {
+			return Arrays.copyOf( this.intList, this.listLength );
+		}
+		
+		/**
+		 * Returns a copy of the elements of the last FLOAT_ARRAY scanned
+		 */
+		public float[] getFloatList( ) {
+			return Arrays.copyOf( this.floatList, this.listLength );
+		}
+		
+		/**
+		 * Whether the last scan started at from in t
+		 */
+		public boolean scanned( CharSequence t, int from ) {
+			return this.text == t && this.from == from;
+		}
+		
+		/**
+		 * Reads -?[0-9]+ optionally followed by [.][0-9]+, leaving INT, FLOAT or NONE in numberKind
+		 * and (if parse is set) the value in intValue/floatValue. An int too big for an int leaves NONE,
+		 * with where it is in outOfRangeFrom/outOfRangeTo.
+		 * 
+		 * @return		Where the number ends
+		 */
+		private int scanNumber( CharSequence t, int from, int to, boolean parse ) {
+			this.numberKind = NONE;
+			int ix = from;
+			boolean negative = ix < to && t.charAt( ix ) == '-';
+			if( negative )
+				ix++;
+			
+			// Up to 18 digits fit in a long, which is plenty to decide if the int/float fast paths apply
+			long mantissa = 0;
+			int digits = 0;
+			int fractionDigits = 0;
+			
+			int digitsStart = ix;
+			for( ; ix < to && LUTE.hasClass( t.charAt( ix ), CC_DIGIT ); ++ix, ++digits )
+				if( digits < 18 )
+					mantissa = mantissa * 10 + (t.charAt( ix ) - '0');
+			if( ix == digitsStart )
+				return from;
+			
+			this.numberKind = INT;
+			int intEnd = ix;
+			
+			if( ix + 1 < to && t.charAt( ix ) == '.' && LUTE.hasClass( t.charAt( ix + 1 ), CC_DIGIT ) ) {
+				for( ++ix; ix < to && LUTE.hasClass( t.charAt( ix ), CC_DIGIT ); ++ix, ++digits, ++fractionDigits )
+					if( digits < 18 )
+						mantissa = mantissa * 10 + (t.charAt( ix ) - '0');
+				this.numberKind = FLOAT;
+			}
+			
+			if( !parse )
+				return ix;
+			
+			if( this.numberKind == INT ) {
+				if( digits > 18 || mantissa > (negative ? -(long)Integer.MIN_VALUE : Integer.MAX_VALUE) ) {
+					this.numberKind = NONE;
+					this.outOfRangeFrom = from;
+					this.outOfRangeTo = intEnd;
+					return from;
+				}
+				this.intValue = (int)(negative ? -mantissa : mantissa);
+			}
 			else {
-				return (token = TOKEN.find( t )) != null ? token : null;
+				// Both exactly representable as floats, so a single (correctly rounded) division
+				// gives the same float parseFloat would
+				if( digits <= 18 && mantissa <= (1 << 24) && fractionDigits < FLOAT_POWERS_OF_TEN.length ) {
+					float f = (float)mantissa / FLOAT_POWERS_OF_TEN[ fractionDigits ];
+					this.floatValue = negative ? -f : f;
+				}
+				else
+					this.floatValue = Float.parseFloat( t.subSequence( from, ix ).toString( ) );
 			}
+			return ix;
 		}
-
-		if( (token = TOKEN.find( t )) != null )
-			return token;
 		
-		// We assume at this point we're dealing with a "custom" token such as an ID or value
-		if( idPattern.matcher( t ).matches( ) )
-			return new ID_TOKEN( t );
-		else if( intPattern.matcher( t ).matches( ) )
-			return new INT_TOKEN( t );
-		else if( intArrayPattern.matcher( t ).matches( ) )
-			return new INT_ARRAY_TOKEN( t );
-		else if( floatPattern.matcher( t ).matches( ) )
-			return new FLOAT_TOKEN( t );
-		else if( floatArrayPattern.matcher( t ).matches( ) )
-			return new FLOAT_ARRAY_TOKEN( t );
-		else if( emptyArrayPattern.matcher( t ).matches( ) )
-			return new INT_ARRAY_TOKEN( );
-		else if( boolPattern.matcher( t ).matches( ) )
-			return new BOOL_TOKEN( t );
-		else if( unitPattern.matcher( t ).matches( ) )
-			return new UNIT_TOKEN( t );
-		else
-			// Need to probably have a fail flag somehow because this stage
-			// means we have an invalid token
-			return null;
+		private void scanList( CharSequence t, int from, int to ) {
+			int ix = from + 1;
+			if( ix < to && t.charAt( ix ) == ']' ) {
+				this.end = ix + 1;
+				this.kind = EMPTY_ARRAY;
+				return;
+			}
+			
+			// Every element has to be the same kind of number as the first
+			// The values go straight into the scratch lists as we validate, so even huge
+			// lists are read in the one pass with nothing boxed or split out
+			int elementKind = NONE;
+			this.listLength = 0;
+			while( ix < to ) {
+				ix = this.scanNumber( t, ix, to, true );
+				if( this.numberKind == NONE || (elementKind != NONE && this.numberKind != elementKind) || ix >= to )
+					return;
+				elementKind = this.numberKind;
+				
+				if( elementKind == INT ) {
+					if( this.listLength == this.intList.length )
+						this.intList = Arrays.copyOf( this.intList, this.listLength * 2 );
+					this.intList[ this.listLength++ ] = this.intValue;
+				}
+				else {
+					if( this.listLength == this.floatList.length )
+						this.floatList = Arrays.copyOf( this.floatList, this.listLength * 2 );
+					this.floatList[ this.listLength++ ] = this.floatValue;
+				}
+				
+				char c = t.charAt( ix++ );
+				if( c == ']' ) {
+					this.end = ix;
+					this.kind = elementKind == INT ? INT_ARRAY : FLOAT_ARRAY;
+					return;
+				}
+				else if( c != ',' )
+					return;
+			}
+		}
+	}
+	
+	private static boolean sameChars( CharSequence t, int from, int to, CharSequence s ) {
+		if( to - from != s.length( ) )
+			return false;
+		for( int ix = from; ix < to; ++ix )
+			if( t.charAt( ix ) != s.charAt( ix - from ) )
+				return false;
+		return true;
 	}
 	
 	/**
-	 * Checks if we're reading a token character or hit a delimiter.
-	 * Adds characters to the passed in token string.
-	 * 
-	 * @param c		current character
-	 * @param t		current token being assembled
-	 * @return		1 if space/EOL, 0 if valid char
+	 * Intern table for identifiers, so that every occurrence of a name shares one ID_TOKEN and
+	 * names can be compared by identity. Each name also gets a dense symbol id (0, 1, 2, ...)
+	 * in the order first seen. <br />
+	 * Lookups hash the characters where they sit, so repeats of a name build no String.
 	 */
-	public int read( char c, StringBuilder t ) {
-		if( c == ' ' || c == '\n' || c == '\r' || c == '\t' ) {
-			return 1;
+	public static class SYMBOL_TABLE {
+		// open addressing, always a power of two in size and at most half full
+		private ID_TOKEN[] slots = new ID_TOKEN[ 64 ];
+		private int[] hashes = new int[ 64 ];
+		private ID_TOKEN[] bySymbol = new ID_TOKEN[ 32 ];
+		private int size;
+		
+		/**
+		 * Returns the ID_TOKEN for the identifier in t[from, to), creating it if it's new
+		 */
+		public ID_TOKEN intern( CharSequence t, int from, int to ) {
+			int hash = 0;
+			for( int ix = from; ix < to; ++ix )
+				hash = 31 * hash + t.charAt( ix );
+			
+			int mask = this.slots.length - 1;
+			int slot = LUTE.spread( hash ) & mask;
+			for( ; this.slots[ slot ] != null; slot = (slot + 1) & mask ) {
+				if( this.hashes[ slot ] == hash && LUTE.sameChars( t, from, to, this.slots[ slot ].getChars( ) ) )
+					return this.slots[ slot ];
+			}
+			
+			ID_TOKEN id = new ID_TOKEN( t.subSequence( from, to ), this.size );
+			this.slots[ slot ] = id;
+			this.hashes[ slot ] = hash;
+			if( this.size == this.bySymbol.length )
+				this.bySymbol = Arrays.copyOf( this.bySymbol, this.size * 2 );
+			this.bySymbol[ this.size++ ] = id;
+			
+			if( this.size * 2 > this.slots.length )
+				this.grow( );
+			return id;
 		}
 		
-		t.append( c );
-		return 0;
+		/**
+		 * Returns the ID_TOKEN with the given symbol id
+		 */
+		public ID_TOKEN get( int symbol ) {
+			return this.bySymbol[ symbol ];
+		}
+		
+		public int size( ) {
+			return this.size;
+		}
+		
+		public void clear( ) {
+			Arrays.fill( this.slots, null );
+			Arrays.fill( this.bySymbol, 0, this.size, null );
+			this.size = 0;
+		}
+		
+		/**
+		 * Once cleared, lets go of the tables if they've grown past room for capacity symbols
+		 */
+		public void trim( int capacity ) {
+			if( this.bySymbol.length > capacity )
+				this.bySymbol = new ID_TOKEN[ 32 ];
+			if( this.slots.length > 2 * capacity ) {
+				this.slots = new ID_TOKEN[ 64 ];
+				this.hashes = new int[ 64 ];
+			}
+		}
+		
+		private void grow( ) {
+			ID_TOKEN[] oldSlots = this.slots;
+			int[] oldHashes = this.hashes;
+			this.slots = new ID_TOKEN[ oldSlots.length * 2 ];
+			this.hashes = new int[ oldSlots.length * 2 ];
+			int mask = this.slots.length - 1;
+			for( int ix = 0; ix < oldSlots.length; ++ix ) {
+				if( oldSlots[ ix ] == null )
+					continue;
+				int slot = LUTE.spread( oldHashes[ ix ] ) & mask;
+				while( this.slots[ slot ] != null )
+					slot = (slot + 1) & mask;
+				this.slots[ slot ] = oldSlots[ ix ];
+				this.hashes[ slot ] = oldHashes[ ix ];
+			}
+		}
+	}
+	
+	private static int spread( int hash ) {
+		return hash ^ (hash >>> 16);
 	}
 	
 	/**
-	 * Adds a token to the buffer of identified tokens
+	 * Finds the longest valid token at the front of the supplied characters, i.e. the one we'd
+	 * settle on if we cut off characters from the end until something matched. <br />
+	 * Literals are scanned with the given scan, which tokenAt( ) reuses.
 	 * 
-	 * @param token				The token object itself
-	 * @param tokenString		The actual token char(s) themselves (debugging purposes)
-	 * @param token_num			The ordinal of the token in the file (debugging purposes)
-	 * @param line				The line in the file where the token occurred (debugging purposes)
-	 * @param token_start		The char position in the line where the token started (debugging purposes)
-	 * @param outputMode		Debug value to determine if debug output should be printed
+	 * @param literals		The scan to read literals with
+	 * @param t				The characters to look in
+	 * @param from			Where the token would start
+	 * @param to			Where the run of (non-delimiter) characters ends
+	 * @return				The length of the token, or 0 if no token starts there
 	 */
-	public void addToken( I_TOKEN token, String tokenString, int token_num, int line, int token_start, int outputMode ) {
-		this.tokenBuffer.add( new TOKEN_META_CHUNK( token, line, token_start, tokenString ) );
+	public static int longestTokenAt( LITERAL_SCAN literals, CharSequence t, int from, int to ) {
+		int longest = 0;
 		
-		if( outputMode == 2 ) {
-			System.out.println(
-					"[@" + token_num + "," + token_start + ":" + (token_start + tokenString.length( ) ) + "='" +
-					tokenString + "',<" + token.getTokenName( ) + ">," + line + ":" + token_start + "]"
-			);
+		int state = TOKEN.TRIE_ROOT;
+		for( int ix = from; ix < to; ++ix ) {
+			state = TOKEN.advance( state, t.charAt( ix ) );
+			if( state == TOKEN.TRIE_DEAD )
+				break;
+			if( TOKEN.accepted( state ) != null )
+				longest = ix + 1 - from;
 		}
+		
+		// Ties go to the reserved token
+		return Math.max( longest, literals.scan( t, from, to ) - from );
 	}
 	
-	/*
-	 * Semantic Chunks Etc.
-	 */
 	/**
-	 * A buffer for identified tokens and their associated metadata used for second-pass syntax checking
+	 * Builds the token of the given length at the front of the supplied characters, as measured by
+	 * longestTokenAt( ). Literal values come from the scan already done there, and identifiers are
+	 * interned in the scan's symbol table.
+	 * 
+	 * @param literals		The scan longestTokenAt( ) was given
+	 * @param t				The characters to look in
+	 * @param from			Where the token starts
+	 * @param length		The length of the token
+	 * @return				The token, or null if those characters aren't one
 	 */
-	private ArrayList< TOKEN_META_CHUNK > tokenBuffer = new ArrayList< TOKEN_META_CHUNK >( );
+	public static I_TOKEN tokenAt( LITERAL_SCAN literals, CharSequence t, int from, int length ) {
+		int state = TOKEN.TRIE_ROOT;
+		for( int ix = from; ix < from + length; ++ix )
+			state = TOKEN.advance( state, t.charAt( ix ) );
+		
+		TOKEN reserved = TOKEN.accepted( state );
+		if( reserved != null )
+			return reserved;
+		
+		if( !literals.scanned( t, from ) )
+			literals.scan( t, from, from + length );
+		return literals.end == from + length ? literals.toToken( ) : null;
+	}
 	
+	/**
+	 * Files at least this big are memory-mapped rather than copied onto the heap
+	 */
+	public static final int MAP_THRESHOLD = 1 << 24;
 	
 	/**
-	 * Token and Metadata Chunk <br />
-	 * Object containing a token and the necessary metadata for printing information pertaining to
-	 * syntax errors
+	 * Loads the whole of a source file into memory.
+	 * 
+	 * @param file		The file to read
+	 * @return			The file's contents
 	 */
-	public class TOKEN_META_CHUNK {
-		public I_TOKEN token;
-		public final int line;
-		public final int startPos;
-		public final String tokenValue;
-		
-		/**
-		 * A "back-ported", necessary bit of metadata so that we can parse into C in a third pass.
-		 * @see TOKEN_LOGIC_DEPTH.
-		 */
-		public int logicDepth;
-		
-		public TOKEN_META_CHUNK( I_TOKEN token, int line, int startPos, String tokenValue ) {
-			this.token = token;
-			this.line = line;
-			this.startPos = startPos;
-			this.tokenValue = tokenValue;
+	public static SOURCE_BUFFER readSource( File file ) throws IOException {
+		FileChannel channel = FileChannel.open( file.toPath( ), StandardOpenOption.READ );
+		try {
+			long size = channel.size( );
+			if( size > Integer.MAX_VALUE )
+				throw new IOException( "File too large: " + file );
+			
+			ByteBuffer bytes;
+			if( size >= MAP_THRESHOLD )
+				bytes = channel.map( FileChannel.MapMode.READ_ONLY, 0, size );
+			else {
+				bytes = ByteBuffer.allocate( (int)size );
+				while( bytes.hasRemaining( ) && channel.read( bytes ) >= 0 );
+				bytes.flip( );
+			}
+			return new SOURCE_BUFFER( bytes );
 		}
-		
-		public void applyHackyDoEndFix( ) {
-			if( this.token == TOKEN.SEQUENCE )
-				this.token = TOKEN.END;
+		finally {
+			channel.close( );
 		}
 	}
 	
 	/**
-	 * Object containing a @TOKEN_TYPE.LOGIC token and its "depth" in the logic.
-	 * Used for validating that all conditions and loops are closed, and that no tokens are dangling or
-	 * superfluous
+	 * Loads the whole of a stream into memory, reading it to the end (but leaving it open).
+	 * 
+	 * @param in		The stream to read, e.g. System.in
+	 * @return			Everything it had in it
 	 */
-	public class TOKEN_LOGIC_DEPTH {
-		public final TOKEN token;
-		public final int depth;
-		
-		public TOKEN_LOGIC_DEPTH( TOKEN token, int depth ) {
-			this.token = token;
-			this.depth = depth;
+	public static SOURCE_BUFFER readSource( InputStream in ) throws IOException {
+		byte[] bytes = new byte[ 8192 ];
+		int size = 0;
+		for( int read; (read = in.read( bytes, size, bytes.length - size )) >= 0; ) {
+			size += read;
+			if( size == bytes.length )
+				bytes = Arrays.copyOf( bytes, size * 2 );
+		}
+		return new SOURCE_BUFFER( ByteBuffer.wrap( bytes, 0, size ).slice( ) );
+	}
+	
+	/**
+	 * A source already in memory as chars, e.g. a String. Pure ASCII is packed into bytes, to be read
+	 * the same way as a file's; anything else is copied out as it is.
+	 */
+	public static SOURCE_BUFFER toSource( CharSequence chars ) {
+		int length = chars.length( );
+		byte[] bytes = new byte[ length ];
+		for( int ix = 0; ix < length; ++ix ) {
+			char c = chars.charAt( ix );
+			if( c >= 0x80 ) {
+				char[] copy = new char[ length ];
+				for( ix = 0; ix < length; ++ix )
+					copy[ ix ] = chars.charAt( ix );
+				return new SOURCE_BUFFER( copy );
+			}
+			bytes[ ix ] = (byte)c;
 		}
+		return new SOURCE_BUFFER( ByteBuffer.wrap( bytes ) );
 	}
 	
 	/**
-	 * Essentially, a sequence of tokens that are contextually juxtaposed and could be interpreted as a single token
-	 *
+	 * The entire source being tokenized, held in memory and indexed directly. <br />
+	 * Pure ASCII sources (the norm) are read straight out of their bytes; anything else is decoded
+	 * once up front with the platform charset, the same as FileReader would have.
 	 */
-	public interface MULTI_TOKEN_SEMANTIC_CHUNK {
+	public static class SOURCE_BUFFER implements CharSequence {
+		private final ByteBuffer ascii;
+		private final char[] decoded;
+		
+		// the same bytes read 8 at a time, lowest address in the lowest byte
+		private final ByteBuffer words;
+		private int[] lineStarts;
+		
+		public SOURCE_BUFFER( ByteBuffer bytes ) {
+			boolean isAscii = true;
+			for( int ix = bytes.position( ); ix < bytes.limit( ) && isAscii; ++ix )
+				isAscii = bytes.get( ix ) >= 0;
+			
+			if( isAscii ) {
+				this.ascii = bytes;
+				this.words = bytes.duplicate( ).order( ByteOrder.LITTLE_ENDIAN );
+				this.decoded = null;
+			}
+			else {
+				CharBuffer chars = Charset.defaultCharset( ).decode( bytes.duplicate( ) );
+				this.ascii = null;
+				this.words = null;
+				this.decoded = new char[ chars.remaining( ) ];
+				chars.get( this.decoded );
+			}
+		}
+		
 		/**
-		 * Unused, remnant from failed Project2
+		 * Chars that have already been decoded, which are kept rather than copied
 		 */
-		public I_VALUE_TOKEN toToken( );
+		public SOURCE_BUFFER( char[] decoded ) {
+			this.ascii = null;
+			this.words = null;
+			this.decoded = decoded;
+		}
+		
+		public boolean isAscii( ) {
+			return this.ascii != null;
+		}
 		
 		/**
-		 * Unused, remnant from failed Project2
+		 * Returns the index of the first delimiter at or after from, or length( ) if there are none
 		 */
-		public String getType( );
+		public int nextDelimiter( int from ) {
+			return this.scan( from, true );
+		}
 		
 		/**
-		 * Returns a String representation of the C code this chunk represents
+		 * Returns the index of the first non-delimiter at or after from, or length( ) if there are none
 		 */
-		public String toCCode( );
-	}
-	
-	/**
-	 * A chunk of tokens that represent a variable declaration
-	 */
-	public class IDENTIFIER_DECLARATION_SEMANTIC_CHUNK implements MULTI_TOKEN_SEMANTIC_CHUNK {
-		private int depth;
-		private boolean isRef;
-		private boolean isList;
-		private I_TOKEN identifier;
-		private I_TOKEN type;
-		
-		public IDENTIFIER_DECLARATION_SEMANTIC_CHUNK( int depth, I_TOKEN identifier, I_TOKEN type, boolean isRef, boolean isList ) {
-			this.depth = depth;
-			this.identifier = identifier;
-			this.type = type;
-			this.isRef = isRef;
-			this.isList = isList;
+		public int nextNonDelimiter( int from ) {
+			return this.scan( from, false );
+		}
+		
+		private int scan( int from, boolean forDelimiter ) {
+			int ix = from;
+			int length = this.length( );
+			if( this.words != null ) {
+				for( ; ix + 8 <= length; ix += 8 ) {
+					long found = LUTE.delimiterBytes( this.words.getLong( ix ) );
+					if( !forDelimiter )
+						found = ~found & BYTE_HIGHS;
+					if( found != 0 )
+						return ix + (Long.numberOfTrailingZeros( found ) >>> 3);
+				}
+			}
+			for( ; ix < length && LUTE.isDelimiter( this.charAt( ix ) ) != forDelimiter; ++ix );
+			return ix;
 		}
 		
-		public int getDepth( ) { return this.depth; }
-		public String getName( ) { return this.identifier.getTokenChars( ); }
-		
-		public boolean conflictsWith( IDENTIFIER_DECLARATION_SEMANTIC_CHUNK isc ) {
-			return this.getName( ).equals(isc.getName( ) ) && this.getDepth( ) == isc.getDepth( );
+		/**
+		 * Returns the index each line starts at; line n (counting from 1) starts at [n - 1]
+		 */
+		public int[] getLineStarts( ) {
+			if( this.lineStarts != null )
+				return this.lineStarts;
+			
+			int[] starts = new int[ 64 ];
+			int count = 1;
+			int length = this.length( );
+			int ix = 0;
+			if( this.words != null ) {
+				for( ; ix + 8 <= length; ix += 8 ) {
+					long found = LUTE.bytesEqualTo( this.words.getLong( ix ), '\n' );
+					for( ; found != 0; found &= found - 1 ) {
+						if( count == starts.length )
+							starts = Arrays.copyOf( starts, count * 2 );
+						starts[ count++ ] = ix + (Long.numberOfTrailingZeros( found ) >>> 3) + 1;
+					}
+				}
+			}
+			for( ; ix < length; ++ix ) {
+				if( this.charAt( ix ) == '\n' ) {
+					if( count == starts.length )
+						starts = Arrays.copyOf( starts, count * 2 );
+					starts[ count++ ] = ix + 1;
+				}
+			}
+			this.lineStarts = Arrays.copyOf( starts, count );
+			return this.lineStarts;
 		}
 		
 		@Override
-		public I_VALUE_TOKEN toToken( ) {
-			return null; //this.identifier;
+		public int length( ) {
+			return this.ascii != null ? this.ascii.limit( ) : this.decoded.length;
 		}
 		
 		@Override
-		public String getType( ) {
-			return null; //isRef ? "TypeRef#" + this.type.getValueType( ) : this.value.getValueType( );
+		public char charAt( int index ) {
+			return this.ascii != null ? (char)this.ascii.get( index ) : this.decoded[ index ];
 		}
 		
+		/**
+		 * Returns a view of the chars in [start, end), nothing is copied until it's turned into a String
+		 */
 		@Override
-		public String toCCode( ) {
-			// it should be isRef and not isList but the tests seem to say otherwise?
-			return (this.isList ? "list<" + this.type.toCCode( ) + ">" : this.type.toCCode( )) + (this.isList ? "*" : "" ) + " " + this.identifier.getTokenChars( ) + " =";
+		public CharSequence subSequence( int start, int end ) {
+			if( start < 0 || end > this.length( ) || start > end )
+				throw new IndexOutOfBoundsException( "[" + start + ", " + end + ") of " + this.length( ) );
+			return new SOURCE_SLICE( this, start, end - start );
 		}
 		
-		public String getTypeAsCCode( ) {
-			return this.type.toCCode( );
+		/**
+		 * Copies the chars in [start, end) into a new String
+		 */
+		public String getString( int start, int end ) {
+			if( this.ascii == null )
+				return new String( this.decoded, start, end - start );
+			
+			char[] chars = new char[ end - start ];
+			for( int ix = start; ix < end; ++ix )
+				chars[ ix - start ] = (char)this.ascii.get( ix );
+			return new String( chars );
+		}
+		
+		@Override
+		public String toString( ) {
+			return this.getString( 0, this.length( ) );
 		}
 	}
 	
-	public class EQUIVALENCE_SEMANTIC_CHUNK implements MULTI_TOKEN_SEMANTIC_CHUNK {
-
-		private I_TOKEN left;
-		private I_VALUE_TOKEN right;
+	/**
+	 * A run of chars in a @SOURCE_BUFFER, kept as just an offset and a length.	<br />
+	 * The String is only made the first time toString( ) is called, and then kept.
+	 */
+	public static class SOURCE_SLICE implements CharSequence {
+		private final SOURCE_BUFFER source;
+		private final int offset;
+		private final int length;
+		private String string;
 		
-		public EQUIVALENCE_SEMANTIC_CHUNK( I_TOKEN left, I_VALUE_TOKEN right ) {
-			this.left = left;
-			this.right = right;
+		public SOURCE_SLICE( SOURCE_BUFFER source, int offset, int length ) {
+			this.source = source;
+			this.offset = offset;
+			this.length = length;
 		}
 		
 		@Override
-		public I_VALUE_TOKEN toToken() {
-			// TODO Auto-generated method stub
-			return null;
+		public int length( ) {
+			return this.length;
 		}
-
+		
 		@Override
-		public String getType() {
-			// TODO Auto-generated method stub
-			return null;
+		public char charAt( int index ) {
+			if( index < 0 || index >= this.length )
+				throw new IndexOutOfBoundsException( index );
+			return this.source.charAt( this.offset + index );
 		}
-
+		
 		@Override
-		public String toCCode() {
-			// TODO Auto-generated method stub
-			String r;
-			if( right instanceof INT_ARRAY_TOKEN )
-				r = ((INT_ARRAY_TOKEN)right).toCCode( );
-			else if( right instanceof FLOAT_ARRAY_TOKEN )
-				r = ((FLOAT_ARRAY_TOKEN)right).toCCode( );
-			else
-				r = right.getTokenChars( );
-			return left.getTokenChars( ) + " == " + r;
+		public CharSequence subSequence( int start, int end ) {
+			if( start < 0 || end > this.length || start > end )
+				throw new IndexOutOfBoundsException( "[" + start + ", " + end + ") of " + this.length );
+			return new SOURCE_SLICE( this.source, this.offset + start, end - start );
 		}
 		
+		@Override
+		public String toString( ) {
+			if( this.string == null )
+				this.string = this.source.getString( this.offset, this.offset + this.length );
+			return this.string;
+		}
 	}
 	
-	public class LIST_OP_SEMANTIC_CHUNK implements MULTI_TOKEN_SEMANTIC_CHUNK {
-		private TOKEN listOp;
-		private I_VALUE_TOKEN list;
+	/**
+	 * Token Stream <br />
+	 * The lexer, handing out one token at a time as it's asked for them rather than reading the whole
+	 * source up front. <br />
+	 * Reads a run of non-delimiter characters at a time, jumping straight over the delimiters (space,
+	 * newline) in between. The tokens found in a run are queued up and handed out one by one.
+	 * After each call to next( ), the getters describe where the token that was returned came from.
+	 */
+	public static class TOKEN_STREAM implements Iterator<I_TOKEN> {
+		private final SOURCE_BUFFER source;
 		
-		public LIST_OP_SEMANTIC_CHUNK( TOKEN listOp, I_VALUE_TOKEN list ) {
-			this.listOp = listOp;
-			this.list = list;
+		// where each line starts, found up front in bulk rather than by counting every char
+		private final int[] lineStarts;
+		private final int length;
+		
+		private int pos;
+		private int line = 1;
+		
+		// char in line that token starts
+		private int token_start = 0;
+		private int token_num = 0;
+		
+		// the tokens found in the current run, waiting to be handed out
+		private I_TOKEN[] pendingTokens = new I_TOKEN[ 16 ];
+		private int[] pendingOffsets = new int[ 16 ];
+		private int[] pendingLengths = new int[ 16 ];
+		private int[] pendingNums = new int[ 16 ];
+		private int[] pendingStarts = new int[ 16 ];
+		private int pendingCount = 0;
+		private int pendingNext = 0;
+		
+		// the token last handed out
+		private int offset;
+		private int tokenLength;
+		private int tokenLine;
+		private int tokenNum;
+		private int tokenStart;
+		
+		private SYNTAX_ERROR syntaxError = null;
+		
+		private final LITERAL_SCAN literals;
+		
+		public TOKEN_STREAM( SOURCE_BUFFER source, LITERAL_SCAN literals ) {
+			this( source, 1, source.length( ), literals );
+		}
+		
+		/**
+		 * A stream of just the lines from firstLine up to (not including) the one starting at end, with
+		 * the token numbers counting from 0. Each stream reading at the same time needs its own literals.
+		 */
+		public TOKEN_STREAM( SOURCE_BUFFER source, int firstLine, int end, LITERAL_SCAN literals ) {
+			this.source = source;
+			this.lineStarts = source.getLineStarts( );
+			this.length = end;
+			this.line = firstLine;
+			this.pos = source.nextNonDelimiter( this.lineStarts[ firstLine - 1 ] );
+			this.literals = literals;
 		}
 		
 		@Override
-		public I_VALUE_TOKEN toToken( ) {
-			if( this.list instanceof INT_ARRAY_TOKEN ) {
-				switch( this.listOp ) {
-					case HEAD:
-						return new INT_TOKEN( ((INT_ARRAY_TOKEN)this.list).head( ) );
-					case TAIL:
-						return new INT_TOKEN( ((INT_ARRAY_TOKEN)this.list).tail( ) );
-					default:
-						return new ERROR_TOKEN( );
+		public boolean hasNext( ) {
+			while( this.pendingNext == this.pendingCount ) {
+				if( this.syntaxError != null || this.pos >= this.length )
+					return false;
+				this.pendingNext = this.pendingCount = 0;
+				this.readRun( );
+			}
+			return true;
+		}
+		
+		@Override
+		public I_TOKEN next( ) {
+			if( !this.hasNext( ) )
+				throw new NoSuchElementException( );
+			
+			int ix = this.pendingNext++;
+			this.offset = this.pendingOffsets[ ix ];
+			this.tokenLength = this.pendingLengths[ ix ];
+			this.tokenLine = this.line;
+			this.tokenNum = this.pendingNums[ ix ];
+			this.tokenStart = this.pendingStarts[ ix ];
+			I_TOKEN token = this.pendingTokens[ ix ];
+			this.pendingTokens[ ix ] = null;
+			return token;
+		}
+		
+		public int getOffset( ) {
+			return this.offset;
+		}
+		
+		public int getLength( ) {
+			return this.tokenLength;
+		}
+		
+		public int getLine( ) {
+			return this.tokenLine;
+		}
+		
+		/**
+		 * The ordinal of the token in the file (debugging purposes)
+		 */
+		public int getTokenNum( ) {
+			return this.tokenNum;
+		}
+		
+		/**
+		 * The char position in the line where the token started (debugging purposes)
+		 */
+		public int getTokenStart( ) {
+			return this.tokenStart;
+		}
+		
+		/**
+		 * The syntax error that stopped the stream, or null if there hasn't been one (yet)
+		 */
+		public SYNTAX_ERROR getSyntaxError( ) {
+			return this.syntaxError;
+		}
+		
+		/**
+		 * How far the token numbers have got, which for a stream that's done is where the next would start
+		 */
+		public int getTokenNums( ) {
+			return this.token_num;
+		}
+		
+		/**
+		 * With each character of the run, attempt to find a valid token
+		 * This process ignores the possibility of data and identifier tokens until the delimiter at the end of the run
+		 */
+		private void readRun( ) {
+			SOURCE_BUFFER source = this.source;
+			int pos = this.pos;
+			
+			// the line table tells us if we crossed any newlines since the last run
+			if( this.line < this.lineStarts.length && this.lineStarts[ this.line ] <= pos ) {
+				while( this.line < this.lineStarts.length && this.lineStarts[ this.line ] <= pos )
+					this.line++;
+				this.token_start = 0;
+			}
+			int lineStart = this.lineStarts[ this.line - 1 ];
+			
+			int runEnd = source.nextDelimiter( pos );
+			
+			// An edge case where you read a character and then EOF: that character counts as the delimiter
+			int lastChar = runEnd < this.length ? runEnd : this.length - 1;
+			
+			int tokenBegin = pos;
+			
+			// where the chars of the token being read have led us in the token trie
+			int trieState = TOKEN.TRIE_ROOT;
+			
+			// Until we hit a delimiter only reserved tokens can be matched, which the trie
+			// answers without building a string
+			for( ; pos < lastChar; ++pos ) {
+				if( pos == tokenBegin )
+					this.token_start = pos - lineStart;
+				
+				trieState = TOKEN.advance( trieState, source.charAt( pos ) );
+				I_TOKEN token = TOKEN.isAmbiguous( trieState ) ? null : TOKEN.accepted( trieState );
+				
+				if( token != null ) {
+					this.queue( token, tokenBegin, pos + 1 - tokenBegin, this.token_num, this.token_start );
+					this.token_num++;
+					
+					tokenBegin = pos + 1;
+					trieState = TOKEN.TRIE_ROOT;
 				}
 			}
-			else if( this.list instanceof FLOAT_ARRAY_TOKEN ) {
-				switch( this.listOp ) {
-					case HEAD:
-						return new FLOAT_TOKEN( ((FLOAT_ARRAY_TOKEN)this.list).head( ) );
-					case TAIL:
-						return new FLOAT_TOKEN( ((FLOAT_ARRAY_TOKEN)this.list).tail( ) );
-					default:
-						return new ERROR_TOKEN( );
+			this.pos = source.nextNonDelimiter( runEnd + 1 );
+			
+			if( tokenBegin == runEnd )
+				return;
+			
+			int opLength = LUTE.longestTokenAt( this.literals, source, tokenBegin, runEnd );
+			
+			if( opLength == runEnd - tokenBegin ) {
+				this.queue( LUTE.tokenAt( this.literals, source, tokenBegin, opLength ), tokenBegin, opLength, this.token_num, this.token_start );
+				this.token_num++;
+			}
+			// We've read the entire string of characters and haven't found a valid token
+			// So we do some work
+			else {
+				// Take the longest valid token off the front, then repeat with the remaining characters
+				// Every character is looked at about once, rather than once per prefix length
+				int opStart = tokenBegin;
+				
+				while( opLength > 0 ) {
+					opStart += opLength;
+					opLength = LUTE.longestTokenAt( this.literals, source, opStart, runEnd );
+				}
+				
+				// The length check is necessary to make sure the entire string was a glob of tokens
+				// Otherwise, we ignore syntax errors like "2.532.50" for a float because it will see
+				// "2.532" as a valid float and ignore the remaining ".50"
+				if( opStart > tokenBegin && opStart == runEnd ) {
+					// it was, so take the same tokens off again, this time keeping them
+					for( opStart = tokenBegin; opStart < runEnd; opStart += opLength ) {
+						opLength = LUTE.longestTokenAt( this.literals, source, opStart, runEnd );
+						this.queue( LUTE.tokenAt( this.literals, source, opStart, opLength ), opStart, opLength, ++this.token_num, this.token_start );
+						this.token_start += opLength;
+					}
+				}
+				else {
+					//System.out.println( "Syntax Error on Line " + line + " at position " + token_start + ": " + tokenString );
+					// an int that doesn't fit is blamed whole, rather than by its first digit
+					LITERAL_SCAN literals = this.literals;
+					if( literals.scanned( source, opStart ) && literals.outOfRangeFrom >= 0 )
+						this.syntaxError = new SYNTAX_ERROR( this.line, literals.outOfRangeFrom, source.subSequence( literals.outOfRangeFrom, literals.outOfRangeTo ).toString( ) );
+					else
+						this.syntaxError = new SYNTAX_ERROR( this.line, opStart, String.valueOf( source.charAt( opStart ) ) );
 				}
 			}
-			else
-				return new ERROR_TOKEN( );
 		}
 		
-		@Override
-		public String getType( ) {
-			return this.toToken( ).getValueType( );
+		private void queue( I_TOKEN token, int offset, int length, int num, int start ) {
+			if( this.pendingCount == this.pendingTokens.length ) {
+				int capacity = this.pendingCount * 2;
+				this.pendingTokens = Arrays.copyOf( this.pendingTokens, capacity );
+				this.pendingOffsets = Arrays.copyOf( this.pendingOffsets, capacity );
+				this.pendingLengths = Arrays.copyOf( this.pendingLengths, capacity );
+				this.pendingNums = Arrays.copyOf( this.pendingNums, capacity );
+				this.pendingStarts = Arrays.copyOf( this.pendingStarts, capacity );
+			}
+			int ix = this.pendingCount++;
+			this.pendingTokens[ ix ] = token;
+			this.pendingOffsets[ ix ] = offset;
+			this.pendingLengths[ ix ] = length;
+			this.pendingNums[ ix ] = num;
+			this.pendingStarts[ ix ] = start;
+		}
+	}
+	
+	/**
+	 * Checks if we're reading a token character or hit a delimiter.
+	 * Adds characters to the passed in token string.
+	 * 
+	 * @param c		current character
+	 * @param t		current token being assembled
+	 * @return		1 if space/EOL, 0 if valid char
+	 */
+	public static int read( char c, StringBuilder t ) {
+		if( LUTE.isDelimiter( c ) ) {
+			return 1;
+		}
+		
+		t.append( c );
+		return 0;
+	}
+	
+	/**
+	 * Whether the character separates tokens (space/EOL)
+	 */
+	public static boolean isDelimiter( char c ) {
+		return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+	}
+	
+	/*
+	 * Scanning 8 ASCII characters at a time, packed into a long (SWAR).
+	 * Each helper returns a mask with the high bit set in every byte that matched.
+	 */
+	private static final long BYTE_ONES = 0x0101010101010101L;
+	private static final long BYTE_LOWS = 0x7F7F7F7F7F7F7F7FL;
+	private static final long BYTE_HIGHS = 0x8080808080808080L;
+	
+	private static long zeroBytes( long word ) {
+		// exact, unlike the usual (x - 0x01..) & ~x trick, so any matching byte can be trusted
+		long t = (word & BYTE_LOWS) + BYTE_LOWS;
+		return ~(t | word | BYTE_LOWS);
+	}
+	
+	private static long bytesEqualTo( long word, char c ) {
+		return LUTE.zeroBytes( word ^ (c * BYTE_ONES) );
+	}
+	
+	private static long delimiterBytes( long word ) {
+		return LUTE.bytesEqualTo( word, ' ' ) | LUTE.bytesEqualTo( word, '\n' ) | LUTE.bytesEqualTo( word, '\r' ) | LUTE.bytesEqualTo( word, '\t' );
+	}
+	
+	/**
+	 * Syntax Error <br />
+	 * The first thing wrong with a source, which is where compiling it stops: the line it's on, where it
+	 * is in the line and the offending token (or char, for one the lexer couldn't make a token out of).
+	 * toString( ) is the line printed for it.
+	 */
+	public static class SYNTAX_ERROR {
+		public final int line;
+		
+		// the char position in the line, counting from 0, or -1 if it hasn't been placed yet (see @locate)
+		public final int position;
+		
+		// where the offending token starts in the source
+		public final int offset;
+		public final String token;
+		
+		public SYNTAX_ERROR( int line, int offset, String token ) {
+			this( line, -1, offset, token );
+		}
+		
+		public SYNTAX_ERROR( int line, int position, int offset, String token ) {
+			this.line = line;
+			this.position = position;
+			this.offset = offset;
+			this.token = token;
+		}
+		
+		/**
+		 * The same error, with its position in the line worked out from the source it was found in
+		 */
+		public SYNTAX_ERROR locate( SOURCE_BUFFER source ) {
+			return new SYNTAX_ERROR( this.line, this.offset - source.getLineStarts( )[ this.line - 1 ], this.offset, this.token );
 		}
 		
 		@Override
-		public String toCCode( ) {
-			return "";
+		public String toString( ) {
+			return "Line " + this.line + " : syntax error : " + this.token;
 		}
 	}
 	
-	public class HACKY_COMPARE_LIST_OP_SEMANTIC_CHUNK implements MULTI_TOKEN_SEMANTIC_CHUNK {
-
-		private I_TOKEN left;
-		private I_TOKEN listOp;
-		private I_TOKEN list;
+	/**
+	 * Compilation Result <br />
+	 * What @compile hands back: the C, unless it was written to a sink instead, and the syntax errors.
+	 * When there's an error the C is only what was written out before it was found, which is nothing
+	 * unless the sequences are written out as they're read (see @setFused).
+	 */
+	public static class COMPILATION_RESULT {
+		private final String cCode;
+		private final List<SYNTAX_ERROR> errors;
 		
-		public HACKY_COMPARE_LIST_OP_SEMANTIC_CHUNK( I_TOKEN left, I_TOKEN listOp, I_TOKEN list ) {
-			this.left = left;
-			this.listOp = listOp;
-			this.list = list;
+		public COMPILATION_RESULT( String cCode, List<SYNTAX_ERROR> errors ) {
+			this.cCode = cCode;
+			this.errors = Collections.unmodifiableList( errors );
+		}
+		
+		public boolean isSuccessful( ) {
+			return this.errors.isEmpty( );
+		}
+		
+		/**
+		 * The generated C, or null if it went to a sink
+		 */
+		public String getCCode( ) {
+			return this.cCode;
+		}
+		
+		public List<SYNTAX_ERROR> getErrors( ) {
+			return this.errors;
+		}
+	}
+	
+	/**
+	 * Compilation Context <br />
+	 * Everything a compilation changes as it goes: the source's identifiers, the scan for literals, the
+	 * token store and where the output goes. Each call to test( ) gets a context of its own, so any
+	 * number of compilations can run on the one LUTE at once with no locking. The LUTE itself only
+	 * holds the settings, and the tables every compilation reads (the token trie, the juxtaposition
+	 * table, ...) are static and the same for all of them.
+	 */
+	public static class COMPILATION_CONTEXT implements Closeable {
+		public final SOURCE_BUFFER source;
+		public final int outputMode;
+		public final PrintStream out;
+		
+		// identifiers are only shared within a compilation
+		public final SYMBOL_TABLE symbols;
+		public final LITERAL_SCAN literals;
+		
+		public I_TOKEN_STORE store = null;
+		
+		// where the buffers are reused from, if anywhere
+		public final COMPILATION_SESSION session;
+		
+		// syntax errors are printed along with the C, or else only kept
+		private final boolean printErrors;
+		private final ArrayList<SYNTAX_ERROR> errors = new ArrayList<SYNTAX_ERROR>( );
+		
+		/**
+		 * @param outputMode	debug purposes, see @test
+		 * @param out			Where the C (or the syntax error) and any debug output is printed
+		 */
+		public COMPILATION_CONTEXT( SOURCE_BUFFER source, int outputMode, PrintStream out ) {
+			this( source, outputMode, out, true );
+		}
+		
+		/**
+		 * As above, the syntax errors only being kept for @getErrors unless printErrors
+		 */
+		public COMPILATION_CONTEXT( SOURCE_BUFFER source, int outputMode, PrintStream out, boolean printErrors ) {
+			this.source = source;
+			this.outputMode = outputMode;
+			this.out = out;
+			this.printErrors = printErrors;
+			this.session = null;
+			this.symbols = new SYMBOL_TABLE( );
+			this.literals = new LITERAL_SCAN( this.symbols );
+		}
+		
+		/**
+		 * A compilation in the session, which must have been started (see @COMPILATION_SESSION.begin),
+		 * keeping the C and the syntax errors for the session to hand back
+		 */
+		public COMPILATION_CONTEXT( SOURCE_BUFFER source, COMPILATION_SESSION session ) {
+			this.source = source;
+			this.outputMode = 0;
+			this.out = session.out;
+			this.printErrors = false;
+			this.session = session;
+			this.symbols = session.symbols;
+			this.literals = session.literals;
+		}
+		
+		/**
+		 * The validator for the store, the session's if the store is too
+		 */
+		public FLOW_VALIDATOR getValidator( ) {
+			return this.isReusing( ) ? this.session.validator : new FLOW_VALIDATOR( this.store );
+		}
+		
+		/**
+		 * The parser for the store, the session's if the store is too
+		 */
+		public SYNTAX_PARSER getParser( ) {
+			return this.isReusing( ) ? this.session.parser : new SYNTAX_PARSER( this.store );
+		}
+		
+		/**
+		 * The IR the tree's lowered to, the session's if the store is the session's too
+		 */
+		public LINEAR_IR getIR( ) {
+			return this.isReusing( ) ? this.session.ir : new LINEAR_IR( );
+		}
+		
+		/**
+		 * Where the C goes, the session's if there is one
+		 */
+		public C_EMITTER getEmitter( ) {
+			return this.session != null ? this.session.emitter : new C_EMITTER( new OutputStreamWriter( this.out ) );
+		}
+		
+		private boolean isReusing( ) {
+			return this.session != null && this.store == this.session.store;
+		}
+		
+		/**
+		 * Records the syntax error that stopped the compilation, printing it out after the C if need be
+		 */
+		public void report( SYNTAX_ERROR syntaxError ) {
+			syntaxError = syntaxError.locate( this.source );
+			this.errors.add( syntaxError );
+			if( this.printErrors )
+				this.out.println( syntaxError );
+		}
+		
+		public List<SYNTAX_ERROR> getErrors( ) {
+			return this.errors;
+		}
+		
+		/**
+		 * Keeps the identified tokens in the given store (which needs setting before anything else), and
+		 * closes it along with the context
+		 */
+		public void setStore( I_TOKEN_STORE store ) {
+			this.store = store;
+			this.store.reset( this.source );
+		}
+		
+		/**
+		 * Adds a token to the buffer of identified tokens
+		 * 
+		 * @param token				The token object itself
+		 * @param offset			Where the token's char(s) start in the source
+		 * @param length			How many chars of the source the token covers
+		 * @param token_num			The ordinal of the token in the file (debugging purposes)
+		 * @param line				The line in the file where the token occurred
+		 * @param token_start		The char position in the line where the token started (debugging purposes)
+		 * @return					The token's index in the buffer
+		 */
+		public int addToken( I_TOKEN token, int offset, int length, int token_num, int line, int token_start ) {
+			return this.addToken( this.store, token, offset, length, token_num, line, token_start );
+		}
+		
+		/**
+		 * Adds a token to the given store rather than the buffer, see above
+		 */
+		public int addToken( I_TOKEN_STORE store, I_TOKEN token, int offset, int length, int token_num, int line, int token_start ) {
+			int ix = store.add( token, line, offset, length );
+			
+			if( this.outputMode == 2 ) {
+				this.out.println(
+						"[@" + token_num + "," + token_start + ":" + (token_start + length) + "='" +
+						store.getTokenText( ix ) + "',<" + token.getTokenName( ) + ">," + line + ":" + token_start + "]"
+				);
+			}
+			
+			return ix;
 		}
 		
 		@Override
-		public I_VALUE_TOKEN toToken() {
-			// TODO Auto-generated method stub
-			return null;
+		public void close( ) throws IOException {
+			if( this.store != null )
+				this.store.close( );
+		}
+	}
+	
+	/**
+	 * Compilation Session <br />
+	 * The buffers a compilation fills (the token store, the symbol table, the validator's, parser's and
+	 * IR's arrays and the C itself), kept from one compilation to the next rather than made anew each
+	 * time, for compiling lots of small sources one after another. Once it's warmed up, a compilation
+	 * only allocates for what it hands back, its tree and its identifiers. <br />
+	 * A session runs one compilation at a time. Buffers that a big source has grown past the session's
+	 * capacity are let go of afterwards, so a session never keeps more than a small source's worth. <br />
+	 * @forThread pools one per thread, which is what @compile uses.
+	 */
+	public static class COMPILATION_SESSION {
+		/**
+		 * Tokens (or instructions, symbols, ...) each buffer keeps room for between compilations
+		 */
+		public static final int DEFAULT_CAPACITY = 1 << 14;
+		
+		// chars of C kept room for, per token
+		private static final int C_PER_TOKEN = 16;
+		
+		private static final ThreadLocal<COMPILATION_SESSION> SESSIONS = new ThreadLocal<COMPILATION_SESSION>( ) {
+			@Override
+			protected COMPILATION_SESSION initialValue( ) {
+				return new COMPILATION_SESSION( );
+			}
+		};
+		
+		/**
+		 * The calling thread's session, or a new one if it's already in the middle of a compilation
+		 */
+		public static COMPILATION_SESSION forThread( ) {
+			COMPILATION_SESSION session = SESSIONS.get( );
+			return session.compiling ? new COMPILATION_SESSION( ) : session;
+		}
+		
+		private final int capacity;
+		private boolean compiling = false;
+		
+		public final TOKEN_BUFFER store = new TOKEN_BUFFER( );
+		public final SYMBOL_TABLE symbols = new SYMBOL_TABLE( );
+		public final LITERAL_SCAN literals = new LITERAL_SCAN( this.symbols );
+		public final FLOW_VALIDATOR validator = new FLOW_VALIDATOR( this.store );
+		public final SYNTAX_PARSER parser = new SYNTAX_PARSER( this.store );
+		public final LINEAR_IR ir = new LINEAR_IR( );
+		
+		// the C goes out through the emitter and all the way down into cCode
+		private ByteArrayOutputStream cCode;
+		private PrintStream out;
+		private Writer writer;
+		private C_EMITTER emitter;
+		
+		public COMPILATION_SESSION( ) {
+			this( DEFAULT_CAPACITY );
+		}
+		
+		/**
+		 * @param capacity		Tokens each buffer keeps room for between compilations (at least 1024)
+		 */
+		public COMPILATION_SESSION( int capacity ) {
+			this.capacity = Math.max( capacity, 1024 );
+			this.newOutput( );
+		}
+		
+		private void newOutput( ) {
+			this.cCode = new ByteArrayOutputStream( );
+			this.out = new PrintStream( this.cCode );
+			this.writer = new OutputStreamWriter( this.out );
+			this.emitter = new C_EMITTER( this.writer );
+		}
+		
+		/**
+		 * Marks the session as in the middle of a compilation, until it's reset
+		 * 
+		 * @throws IllegalStateException	if it already is
+		 */
+		public void begin( ) {
+			if( this.compiling )
+				throw new IllegalStateException( "Compilation session already in use" );
+			this.compiling = true;
+		}
+		
+		/**
+		 * The C written so far
+		 */
+		public String getCCode( ) {
+			return this.cCode.toString( );
+		}
+		
+		/**
+		 * Empties every buffer, ready for the next compilation, whether the last one finished or not.
+		 * Anything that's grown past the capacity is let go of.
+		 */
+		public void reset( ) {
+			this.store.reset( null );
+			this.store.trim( this.capacity );
+			this.symbols.clear( );
+			this.symbols.trim( this.capacity );
+			this.literals.reset( this.capacity );
+			this.validator.reset( this.capacity );
+			this.parser.reset( this.capacity );
+			this.ir.reset( this.capacity );
+			
+			// anything a compilation that threw left on its way through goes too
+			this.emitter.reset( );
+			try {
+				this.writer.flush( );
+			}
+			catch( IOException ioe ) {
+				throw new UncheckedIOException( ioe );
+			}
+			if( this.cCode.size( ) > C_PER_TOKEN * this.capacity )
+				this.newOutput( );
+			else
+				this.cCode.reset( );
+			
+			this.compiling = false;
+		}
+	}
+	
+	/*
+	 * Semantic Chunks Etc.
+	 */
+	/**
+	 * Whether the second pass runs as tokens are read, rather than after the whole file is tokenized
+	 */
+	private boolean streaming = false;
+	
+	/**
+	 * Checks each token as soon as it's read, so a syntax error is found having only read up to it and the
+	 * first error in the file is reported, whichever pass finds it. Off by default: otherwise every first
+	 * pass error is reported before any second pass error, however late in the file it is.
+	 */
+	public void setStreaming( boolean streaming ) {
+		this.streaming = streaming;
+	}
+	
+	/**
+	 * Whether all three passes are done at once, a sequence at a time, see @testFused
+	 */
+	private boolean fused = false;
+	
+	/**
+	 * Writes out the C for each sequence as soon as it's been read and checked, keeping only the tokens
+	 * of the sequence being read rather than every token in the file. Off by default.
+	 */
+	public void setFused( boolean fused ) {
+		this.fused = fused;
+	}
+	
+	/**
+	 * Whether the passes run at once on threads of their own, see @TOKEN_PIPELINE
+	 */
+	private boolean pipelined = false;
+	
+	/**
+	 * Lexes, checks and writes out the C for a file at the same time, each on a thread of its own, for
+	 * big files on machines with cores to spare. The output is the same as @setFused. Off by default.
+	 */
+	public void setPipelined( boolean pipelined ) {
+		this.pipelined = pipelined;
+	}
+	
+	/**
+	 * Whether the first pass lexes chunks of the file at the same time, see @lexParallel
+	 */
+	private boolean parallelLexing = false;
+	
+	/**
+	 * Lexes big files a chunk of lines per core at a time before checking them, as usual. Only the
+	 * lexing is shared out, and the output is the same. Off by default, and ignored when streaming.
+	 */
+	public void setParallelLexing( boolean parallelLexing ) {
+		this.parallelLexing = parallelLexing;
+	}
+	
+	/**
+	 * Whether the third pass writes out groups of sequences at the same time, see @emitParallel
+	 */
+	private boolean parallelEmission = false;
+	
+	/**
+	 * Writes out the C for big programs a group of sequences per core at a time, once they've all been
+	 * parsed. The output is the same. Off by default, and ignored by @setFused and @setPipelined.
+	 */
+	public void setParallelEmission( boolean parallelEmission ) {
+		this.parallelEmission = parallelEmission;
+	}
+	
+	/**
+	 * Whether each compilation keeps its tokens in an @OFF_HEAP_TOKEN_STORE
+	 */
+	private boolean offHeap = false;
+	
+	/**
+	 * Where an off-heap store spills its tokens to a temp file, null for none
+	 */
+	private File spillDirectory = null;
+	
+	/**
+	 * Keeps the identified tokens out of the heap, for huge inputs. Off by default.
+	 */
+	public void setOffHeap( boolean offHeap ) {
+		this.offHeap = offHeap;
+	}
+	
+	/**
+	 * Keeps the identified tokens out of the heap in a temp file in the given directory, or not at all
+	 * if it's null (the default)
+	 */
+	public void setSpillDirectory( File spillDirectory ) {
+		this.spillDirectory = spillDirectory;
+	}
+	
+	/**
+	 * A store for a compilation's tokens, as set up above
+	 */
+	private I_TOKEN_STORE newTokenStore( COMPILATION_CONTEXT context ) throws IOException {
+		if( this.spillDirectory != null )
+			return new OFF_HEAP_TOKEN_STORE( context.symbols, this.spillDirectory );
+		if( this.offHeap )
+			return new OFF_HEAP_TOKEN_STORE( context.symbols );
+		if( context.session != null )
+			return context.session.store;
+		return new TOKEN_BUFFER( );
+	}
+	
+	/**
+	 * Somewhere to keep the identified tokens and their metadata between passes. <br />
+	 * Tokens are addressed by the order they were added in, starting from 0.
+	 */
+	public interface I_TOKEN_STORE extends Closeable {
+		/**
+		 * Empties the store, ready for the tokens of the given source
+		 */
+		abstract void reset( CharSequence source );
+		
+		/**
+		 * Appends a token, returning its index
+		 */
+		abstract int add( I_TOKEN token, int line, int offset, int length );
+		
+		abstract int size( );
+		abstract int getKind( int ix );
+		abstract int getLine( int ix );
+		abstract int getOffset( int ix );
+		abstract int getLength( int ix );
+		abstract int getLogicDepth( int ix );
+		abstract void setLogicDepth( int ix, int depth );
+		
+		/**
+		 * Returns the token at the index, or null if the index is out of range
+		 */
+		abstract I_TOKEN getToken( int ix );
+		
+		/**
+		 * Returns the tokens from index from (inclusive) to index to (exclusive)
+		 */
+		abstract I_TOKEN[] getTokens( int from, int to );
+		
+		/**
+		 * The token's chars as they appear in the source, as a view rather than a copy
+		 */
+		abstract CharSequence getTokenText( int ix );
+		
+		/**
+		 * The token's chars as they appear in the source (for printing syntax errors)
+		 */
+		abstract String getTokenValue( int ix );
+		
+		abstract void applyHackyDoEndFix( int ix );
+		
+		/**
+		 * Lets the store forget the tokens before index upTo, once nothing is going to read them again.
+		 * The tokens after keep their indices. A store is free to keep them anyway.
+		 */
+		abstract void discard( int upTo );
+	}
+	
+	/**
+	 * Token Buffer <br />
+	 * Every identified token and the metadata needed for printing syntax errors and parsing into C, kept
+	 * column by column in parallel arrays rather than as an object per token. <br />
+	 * Reserved tokens are stored as just their kind id, only value tokens keep their object in the side
+	 * table. The token's text is never copied, it's read back out of the source when needed.
+	 */
+	public static class TOKEN_BUFFER implements I_TOKEN_STORE {
+		private int[] kinds = new int[ 1024 ];
+		private int[] lines = new int[ 1024 ];
+		private int[] offsets = new int[ 1024 ];
+		private int[] lengths = new int[ 1024 ];
+		
+		/**
+		 * A "back-ported", necessary bit of metadata so that we can parse into C in a third pass.
+		 * @see FLOW_VALIDATOR.
+		 */
+		private int[] logicDepths = new int[ 1024 ];
+		
+		// value tokens by index, null for reserved tokens
+		private I_TOKEN[] values = new I_TOKEN[ 1024 ];
+		
+		private int size = 0;
+		
+		// the index of the first token still kept (at the front of the arrays), see discard( )
+		private int base = 0;
+		
+		private CharSequence source;
+		
+		@Override
+		public void reset( CharSequence source ) {
+			Arrays.fill( this.values, 0, this.size - this.base, null );
+			this.size = 0;
+			this.base = 0;
+			this.source = source;
+		}
+		
+		@Override
+		public int add( I_TOKEN token, int line, int offset, int length ) {
+			if( this.size - this.base == this.kinds.length )
+				this.grow( );
+			
+			int at = this.size - this.base;
+			int kind = token.getKind( );
+			this.kinds[ at ] = kind;
+			this.lines[ at ] = line;
+			this.offsets[ at ] = offset;
+			this.lengths[ at ] = length;
+			this.logicDepths[ at ] = 0;
+			this.values[ at ] = token instanceof TOKEN ? null : token;
+			return this.size++;
+		}
+		
+		@Override
+		public int size( ) {
+			return this.size;
+		}
+		
+		@Override
+		public int getKind( int ix ) {
+			return this.kinds[ ix - this.base ];
+		}
+		
+		@Override
+		public int getLine( int ix ) {
+			return this.lines[ ix - this.base ];
+		}
+		
+		@Override
+		public int getOffset( int ix ) {
+			return this.offsets[ ix - this.base ];
+		}
+		
+		@Override
+		public int getLength( int ix ) {
+			return this.lengths[ ix - this.base ];
+		}
+		
+		@Override
+		public int getLogicDepth( int ix ) {
+			return this.logicDepths[ ix - this.base ];
+		}
+		
+		@Override
+		public void setLogicDepth( int ix, int depth ) {
+			this.logicDepths[ ix - this.base ] = depth;
+		}
+		
+		@Override
+		public I_TOKEN getToken( int ix ) {
+			if( ix < this.base || ix >= this.size )
+				return null;
+			I_TOKEN value = this.values[ ix - this.base ];
+			return value != null ? value : TOKEN.ofKind( this.kinds[ ix - this.base ] );
+		}
+		
+		@Override
+		public CharSequence getTokenText( int ix ) {
+			int offset = this.offsets[ ix - this.base ];
+			return this.source.subSequence( offset, offset + this.lengths[ ix - this.base ] );
+		}
+		
+		@Override
+		public String getTokenValue( int ix ) {
+			return this.getTokenText( ix ).toString( );
+		}
+		
+		@Override
+		public I_TOKEN[] getTokens( int from, int to ) {
+			I_TOKEN[] tokens = new I_TOKEN[ to - from ];
+			for( int ix = from; ix < to; ++ix )
+				tokens[ ix - from ] = this.getToken( ix );
+			return tokens;
+		}
+		
+		@Override
+		public void applyHackyDoEndFix( int ix ) {
+			if( this.kinds[ ix - this.base ] == TOKEN.SEQUENCE.ordinal( ) )
+				this.kinds[ ix - this.base ] = TOKEN.END.ordinal( );
+		}
+		
+		/**
+		 * Moves the tokens still kept down to the front of the arrays, so they only ever need to be as
+		 * big as the most tokens kept at once
+		 */
+		@Override
+		public void discard( int upTo ) {
+			int drop = Math.min( upTo, this.size ) - this.base;
+			if( drop <= 0 )
+				return;
+			
+			int kept = this.size - this.base - drop;
+			System.arraycopy( this.kinds, drop, this.kinds, 0, kept );
+			System.arraycopy( this.lines, drop, this.lines, 0, kept );
+			System.arraycopy( this.offsets, drop, this.offsets, 0, kept );
+			System.arraycopy( this.lengths, drop, this.lengths, 0, kept );
+			System.arraycopy( this.logicDepths, drop, this.logicDepths, 0, kept );
+			System.arraycopy( this.values, drop, this.values, 0, kept );
+			Arrays.fill( this.values, kept, kept + drop, null );
+			this.base += drop;
+		}
+		
+		@Override
+		public void close( ) {
+			this.reset( null );
+		}
+		
+		/**
+		 * Once reset, lets go of the arrays if they've grown past room for capacity tokens
+		 */
+		public void trim( int capacity ) {
+			if( this.kinds.length <= capacity )
+				return;
+			this.kinds = new int[ 1024 ];
+			this.lines = new int[ 1024 ];
+			this.offsets = new int[ 1024 ];
+			this.lengths = new int[ 1024 ];
+			this.logicDepths = new int[ 1024 ];
+			this.values = new I_TOKEN[ 1024 ];
+		}
+		
+		private void grow( ) {
+			int capacity = this.kinds.length * 2;
+			this.kinds = Arrays.copyOf( this.kinds, capacity );
+			this.lines = Arrays.copyOf( this.lines, capacity );
+			this.offsets = Arrays.copyOf( this.offsets, capacity );
+			this.lengths = Arrays.copyOf( this.lengths, capacity );
+			this.logicDepths = Arrays.copyOf( this.logicDepths, capacity );
+			this.values = Arrays.copyOf( this.values, capacity );
+		}
+	}
+	
+	/**
+	 * Off-Heap Token Store <br />
+	 * Keeps the identified tokens outside the Java heap, in direct buffers or (optionally) in a memory
+	 * mapped temp file that the OS can page out to disk, so the heap and GC don't grow with the input. <br />
+	 * Every token is a fixed record of six ints: kind, line, offset, length, logic depth and payload.
+	 * The payload is whatever is needed to rebuild a value token: an int's value, a float's bits, a
+	 * bool, or an identifier's symbol. Lists are rebuilt by scanning their text in the source again.
+	 */
+	public static class OFF_HEAP_TOKEN_STORE implements I_TOKEN_STORE {
+		private static final int KIND = 0;
+		private static final int LINE = 4;
+		private static final int OFFSET = 8;
+		private static final int LENGTH = 12;
+		private static final int DEPTH = 16;
+		private static final int PAYLOAD = 20;
+		private static final int RECORD_BYTES = 24;
+		
+		// records are kept in fixed pages so growing never copies what's already stored
+		private static final int PAGE_SHIFT = 16;
+		private static final int PAGE_MASK = (1 << PAGE_SHIFT) - 1;
+		private static final int PAGE_BYTES = RECORD_BYTES << PAGE_SHIFT;
+		
+		private ByteBuffer[] pages = new ByteBuffer[ 16 ];
+		private int pageCount = 0;
+		private int size = 0;
+		
+		private CharSequence source;
+		
+		// where the identifiers' tokens are
+		private final SYMBOL_TABLE symbols;
+		
+		// only used to rebuild lists
+		private final LITERAL_SCAN listScan = new LITERAL_SCAN( null );
+		
+		// the file being spilled to, null if the pages are plain direct buffers
+		private final File spillFile;
+		private final FileChannel spill;
+		
+		/**
+		 * Keeps the tokens in direct (off-heap) memory, with their identifiers interned in symbols
+		 */
+		public OFF_HEAP_TOKEN_STORE( SYMBOL_TABLE symbols ) {
+			this.symbols = symbols;
+			this.spillFile = null;
+			this.spill = null;
+		}
+		
+		/**
+		 * Keeps the tokens in a temp file in the given directory (null for the default temp directory),
+		 * mapped into memory a page at a time
+		 */
+		public OFF_HEAP_TOKEN_STORE( SYMBOL_TABLE symbols, File directory ) throws IOException {
+			this.symbols = symbols;
+			this.spillFile = File.createTempFile( "lute", ".tokens", directory );
+			
+			// the file is only ever deleted by close( ), so it mustn't outlive a failed open either
+			try {
+				this.spill = FileChannel.open( this.spillFile.toPath( ), StandardOpenOption.READ, StandardOpenOption.WRITE );
+			}
+			catch( IOException | RuntimeException e ) {
+				this.spillFile.delete( );
+				throw e;
+			}
+		}
+		
+		@Override
+		public void reset( CharSequence source ) {
+			this.size = 0;
+			this.source = source;
+		}
+		
+		@Override
+		public int add( I_TOKEN token, int line, int offset, int length ) {
+			int ix = this.size;
+			if( (ix >>> PAGE_SHIFT) == this.pageCount )
+				this.addPage( );
+			this.size++;
+			
+			int kind = token.getKind( );
+			int payload = 0;
+			if( kind == KIND_ID )
+				payload = ((ID_TOKEN)token).getSymbol( );
+			else if( kind == KIND_INT )
+				payload = ((INT_TOKEN)token).getValue( );
+			else if( kind == KIND_FLOAT )
+				payload = Float.floatToRawIntBits( ((FLOAT_TOKEN)token).getValue( ) );
+			else if( kind == KIND_BOOL )
+				payload = ((BOOL_TOKEN)token).getValueAsBoolean( ) ? 1 : 0;
+			
+			ByteBuffer page = this.pages[ ix >>> PAGE_SHIFT ];
+			int at = (ix & PAGE_MASK) * RECORD_BYTES;
+			page.putInt( at + KIND, kind );
+			page.putInt( at + LINE, line );
+			page.putInt( at + OFFSET, offset );
+			page.putInt( at + LENGTH, length );
+			page.putInt( at + DEPTH, 0 );
+			page.putInt( at + PAYLOAD, payload );
+			return ix;
+		}
+		
+		@Override
+		public int size( ) {
+			return this.size;
+		}
+		
+		@Override
+		public int getKind( int ix ) {
+			return this.get( ix, KIND );
+		}
+		
+		@Override
+		public int getLine( int ix ) {
+			return this.get( ix, LINE );
+		}
+		
+		@Override
+		public int getOffset( int ix ) {
+			return this.get( ix, OFFSET );
+		}
+		
+		@Override
+		public int getLength( int ix ) {
+			return this.get( ix, LENGTH );
+		}
+		
+		@Override
+		public int getLogicDepth( int ix ) {
+			return this.get( ix, DEPTH );
+		}
+		
+		@Override
+		public void setLogicDepth( int ix, int depth ) {
+			this.pages[ ix >>> PAGE_SHIFT ].putInt( (ix & PAGE_MASK) * RECORD_BYTES + DEPTH, depth );
+		}
+		
+		@Override
+		public I_TOKEN getToken( int ix ) {
+			if( ix < 0 || ix >= this.size )
+				return null;
+			
+			int kind = this.getKind( ix );
+			TOKEN reserved = TOKEN.ofKind( kind );
+			if( reserved != null )
+				return reserved;
+			
+			int payload = this.get( ix, PAYLOAD );
+			if( kind == KIND_ID ) {
+				if( payload >= 0 )
+					return this.symbols.get( payload );
+				int offset = this.getOffset( ix );
+				return this.symbols.intern( this.source, offset, offset + this.getLength( ix ) );
+			}
+			if( kind == KIND_INT )
+				return LUTE.intToken( payload );
+			if( kind == KIND_FLOAT )
+				return new FLOAT_TOKEN( Float.intBitsToFloat( payload ) );
+			if( kind == KIND_BOOL )
+				return LUTE.boolToken( payload != 0 );
+			if( kind == KIND_UNIT )
+				return LUTE.UNIT;
+			if( kind == KIND_ERROR )
+				return LUTE.ERROR;
+			if( kind == KIND_INT_ARRAY || kind == KIND_FLOAT_ARRAY ) {
+				// the C can be written out on more than one thread at once, see @emitParallel
+				synchronized( this.listScan ) {
+					int offset = this.getOffset( ix );
+					this.listScan.scan( this.source, offset, offset + this.getLength( ix ) );
+					return this.listScan.toToken( );
+				}
+			}
+			return LUTE.EOF;
+		}
+		
+		@Override
+		public CharSequence getTokenText( int ix ) {
+			int offset = this.getOffset( ix );
+			return this.source.subSequence( offset, offset + this.getLength( ix ) );
+		}
+		
+		@Override
+		public String getTokenValue( int ix ) {
+			return this.getTokenText( ix ).toString( );
+		}
+		
+		@Override
+		public I_TOKEN[] getTokens( int from, int to ) {
+			I_TOKEN[] tokens = new I_TOKEN[ to - from ];
+			for( int ix = from; ix < to; ++ix )
+				tokens[ ix - from ] = this.getToken( ix );
+			return tokens;
+		}
+		
+		@Override
+		public void applyHackyDoEndFix( int ix ) {
+			if( this.getKind( ix ) == TOKEN.SEQUENCE.ordinal( ) )
+				this.pages[ ix >>> PAGE_SHIFT ].putInt( (ix & PAGE_MASK) * RECORD_BYTES + KIND, TOKEN.END.ordinal( ) );
+		}
+		
+		/**
+		 * Keeps everything: the records are already out of the heap
+		 */
+		@Override
+		public void discard( int upTo ) { }
+
+		/**
+		 * Lets go of the pages, and deletes the spill file if there is one
+		 */
+		@Override
+		public void close( ) throws IOException {
+			this.reset( null );
+			Arrays.fill( this.pages, null );
+			this.pageCount = 0;
+			if( this.spill != null ) {
+				try {
+					this.spill.close( );
+				}
+				finally {
+					this.spillFile.delete( );
+				}
+			}
+		}
+		
+		private int get( int ix, int field ) {
+			return this.pages[ ix >>> PAGE_SHIFT ].getInt( (ix & PAGE_MASK) * RECORD_BYTES + field );
+		}
+		
+		private void addPage( ) {
+			if( this.pageCount == this.pages.length )
+				this.pages = Arrays.copyOf( this.pages, this.pageCount * 2 );
+			
+			ByteBuffer page;
+			if( this.spill == null )
+				page = ByteBuffer.allocateDirect( PAGE_BYTES );
+			else {
+				try {
+					page = this.spill.map( FileChannel.MapMode.READ_WRITE, (long)this.pageCount * PAGE_BYTES, PAGE_BYTES );
+				}
+				catch( IOException ioe ) {
+					throw new UncheckedIOException( "Could not extend token spill file " + this.spillFile, ioe );
+				}
+			}
+			this.pages[ this.pageCount++ ] = page.order( ByteOrder.nativeOrder( ) );
+		}
+	}
+	
+	/**
+	 * One made-up token of every kind, indexed by kind, with null for @KIND_NONE.
+	 * Each call makes new value tokens, so tokens from two calls are never the same object.
+	 */
+	public static I_TOKEN[] sampleTokens( ) {
+		I_TOKEN[] samples = new I_TOKEN[ KIND_COUNT + 1 ];
+		for( int kind = 0; kind < KIND_ID; ++kind )
+			samples[ kind ] = TOKEN.ofKind( kind );
+		samples[ KIND_ID ] = new ID_TOKEN( "x" );
+		samples[ KIND_INT ] = new INT_TOKEN( 0 );
+		samples[ KIND_FLOAT ] = new FLOAT_TOKEN( 0f );
+		samples[ KIND_BOOL ] = new BOOL_TOKEN( true );
+		samples[ KIND_UNIT ] = new UNIT_TOKEN( null );
+		samples[ KIND_INT_ARRAY ] = new INT_ARRAY_TOKEN( );
+		samples[ KIND_FLOAT_ARRAY ] = new FLOAT_ARRAY_TOKEN( new float[ 0 ], "[]" );
+		samples[ KIND_ERROR ] = new ERROR_TOKEN( );
+		samples[ KIND_EOF ] = new EOF_TOKEN( null );
+		return samples;
+	}
+	
+	/**
+	 * The juxtaposition rules as a table, shared by every compilation. It's built in full the first
+	 * time anything asks for it and never changes after, so any number of threads can read it at once.
+	 */
+	public static JUXTAPOSITION_TABLE getJuxtapositionTable( ) {
+		return JUXTAPOSITION_TABLE.RULES;
+	}
+	
+	/**
+	 * Juxtaposition Table <br />
+	 * The juxtaposition rules of every token (checkJuxtapose and getOffendingToken) as a table of answers
+	 * for every combination of token kinds, so the second pass only has to look them up. <br />
+	 * Indexed by the kinds of the current, prior and next tokens, with @KIND_NONE for no token.
+	 * The few rules that also look at the token after next get an answer for each kind of that token too.
+	 * Every answer is worked out up front, when the class is loaded, and nothing is written after that,
+	 * so compilations on different threads share the one table without locking.
+	 */
+	public static class JUXTAPOSITION_TABLE {
+		public static final int BLAME_CURRENT = 0;
+		public static final int BLAME_PRIOR = 1;
+		public static final int BLAME_NEXT = 2;
+		
+		private static final byte VALID = 1;
+		private static final byte INVALID = 2;
+		private static final byte BY_AFTER = 3;
+		
+		// The one table there is (see @LUTE.getJuxtapositionTable)
+		static final JUXTAPOSITION_TABLE RULES = new JUXTAPOSITION_TABLE( );
+		
+		// every kind plus KIND_NONE
+		private final int width = KIND_COUNT + 1;
+		
+		// VALID, INVALID, or BY_AFTER when the answer is in letAfter
+		private final byte[] juxtapose = new byte[ KIND_COUNT * this.width * this.width ];
+		
+		// let is the only token whose rule looks at the token after next, so only it gets answers by
+		// the prior, next and after kinds
+		private final byte[] letAfter = new byte[ this.width * this.width * this.width ];
+		
+		// one of the BLAME_ constants
+		private final byte[] offending = new byte[ KIND_COUNT * this.width * this.width ];
+		
+		private JUXTAPOSITION_TABLE( ) {
+			// separate samples for each position, so value tokens either side are never the same object
+			// (reserved tokens always are, which is how the same one either side gets blamed on the prior)
+			I_TOKEN[] currents = LUTE.sampleTokens( );
+			I_TOKEN[] priors = LUTE.sampleTokens( );
+			I_TOKEN[] nexts = LUTE.sampleTokens( );
+			I_TOKEN[] afters = LUTE.sampleTokens( );
+			
+			int cell = 0;
+			for( int current = 0; current < KIND_COUNT; ++current ) {
+				I_TOKEN t = currents[ current ];
+				for( int prior = 0; prior < this.width; ++prior ) {
+					for( int next = 0; next < this.width; ++next, ++cell ) {
+						if( t == TOKEN.LET )
+							this.juxtapose[ cell ] = BY_AFTER;
+						else
+							this.juxtapose[ cell ] = t.checkJuxtapose( priors[ prior ], nexts[ next ], afters[ 0 ] ) ? VALID : INVALID;
+						// valid cells get blamed too: the blame is asked for with the neighbours whatever
+						// line they're on, which can be a combination that's fine on one line
+						this.offending[ cell ] = (byte)this.blame( t, priors[ prior ], nexts[ next ] );
+					}
+				}
+			}
+			
+			cell = 0;
+			for( int prior = 0; prior < this.width; ++prior )
+				for( int next = 0; next < this.width; ++next )
+					for( int after = 0; after < this.width; ++after, ++cell )
+						this.letAfter[ cell ] = TOKEN.LET.checkJuxtapose( priors[ prior ], nexts[ next ], afters[ after ] ) ? VALID : INVALID;
+		}
+		
+		/**
+		 * Whether a token of the current kind is valid between the others, which are @KIND_NONE if missing
+		 */
+		public boolean check( int current, int prior, int next, int after ) {
+			byte answer = this.juxtapose[ (current * this.width + prior) * this.width + next ];
+			if( answer == BY_AFTER )
+				answer = this.letAfter[ (prior * this.width + next) * this.width + after ];
+			return answer == VALID;
+		}
+		
+		/**
+		 * Which token to blame when a token of the current kind isn't valid: one of the BLAME_ constants
+		 */
+		public int getOffending( int current, int prior, int next ) {
+			return this.offending[ (current * this.width + prior) * this.width + next ];
+		}
+		
+		private int blame( I_TOKEN t, I_TOKEN prior, I_TOKEN next ) {
+			I_TOKEN offendingToken = t.getOffendingToken( prior, next, null );
+			if( offendingToken == null )
+				return BLAME_CURRENT;
+			
+			// Value tokens are shared now, so the same token before and after is no longer
+			// proof it came from before. val, let and do only ever blame the token after them.
+			boolean blamesNext = !(offendingToken instanceof TOKEN) && (t == TOKEN.VALUE || t == TOKEN.LET || t == TOKEN.DO);
+			return offendingToken == prior && !blamesNext ? BLAME_PRIOR : offendingToken == next ? BLAME_NEXT : BLAME_CURRENT;
+		}
+	}
+	
+	/**
+	 * Flow Validator <br />
+	 * The second pass: checks each token against its juxtaposed tokens and that the logic/conditional/loop
+	 * tokens flow into each other properly. <br />
+	 * Tokens are handed over one at a time as they're found. Only a 1-token look-behind and a 2-token
+	 * look-ahead are ever needed, so just the last four tokens are kept, in a ring, and a token is
+	 * checked as soon as the two after it have arrived (or there are no more coming, see finish( )). <br />
+	 * Also writes the logic depth and the "do" END fix for each token back to the store for the third pass.
+	 */
+	public static class FLOW_VALIDATOR {
+		private static final int RING_MASK = 3;
+		
+		private final I_TOKEN_STORE store;
+		
+		// the last four tokens handed over, by their count mod 4
+		private final int[] ringIx = new int[ RING_MASK + 1 ];
+		private final int[] ringKinds = new int[ RING_MASK + 1 ];
+		private final int[] ringLines = new int[ RING_MASK + 1 ];
+		
+		private int received = 0;
+		private int checked = 0;
+		
+		// The last logic/conditional/loop type token encountered at each "depth" in the logic
+		// Used to track the flow of conditions and check that nothing is left dangling or is extra.
+		// Only ever as big as the deepest nesting, depths below 0 (too many ENDs) are kept separately
+		private TOKEN[] lastLogic = new TOKEN[ 16 ];
+		private TOKEN[] lastLogicBelowZero = new TOKEN[ 4 ];
+		
+		// How "deep" into a condition we are. If you had 3 nested if's, they'd be 1, 2, and 3 respectively
+		private int logicDepth = -1;
+		
+		// There is an interesting quirk with the "do" token in that it lacks an end-of-loop partner token
+		// LUTE struggles with identifying when a ; means "end of do" and not as part of other sequences
+		// It tries its best, but compensating for ; as part of logic makes things... interesting.
+		private int doCount = 0;
+		
+		private SYNTAX_ERROR syntaxError = null;
+		
+		private final JUXTAPOSITION_TABLE juxtapositions;
+		
+		public FLOW_VALIDATOR( I_TOKEN_STORE store ) {
+			this.store = store;
+			this.juxtapositions = LUTE.getJuxtapositionTable( );
+		}
+		
+		/**
+		 * Starts over, for the store's next tokens, letting go of the logic tracking if it's grown past
+		 * capacity levels deep
+		 */
+		public void reset( int capacity ) {
+			this.received = 0;
+			this.checked = 0;
+			this.logicDepth = -1;
+			this.doCount = 0;
+			this.syntaxError = null;
+			
+			if( this.lastLogic.length > capacity )
+				this.lastLogic = new TOKEN[ 16 ];
+			else
+				Arrays.fill( this.lastLogic, null );
+			if( this.lastLogicBelowZero.length > capacity )
+				this.lastLogicBelowZero = new TOKEN[ 4 ];
+			else
+				Arrays.fill( this.lastLogicBelowZero, null );
+		}
+		
+		/**
+		 * Hands over the next token, which has already been put in the store at index ix.
+		 * Returns false once a syntax error has been found.
+		 */
+		public boolean accept( int ix, int kind, int line ) {
+			if( this.syntaxError != null )
+				return false;
+			
+			int slot = this.received++ & RING_MASK;
+			this.ringIx[ slot ] = ix;
+			this.ringKinds[ slot ] = kind;
+			this.ringLines[ slot ] = line;
+			
+			if( this.received - this.checked > 2 )
+				this.check( );
+			return this.syntaxError == null;
+		}
+		
+		/**
+		 * Checks the tokens still waiting on their look-ahead, now that no more are coming.
+		 * Returns false if there was a syntax error.
+		 */
+		public boolean finish( ) {
+			while( this.syntaxError == null && this.checked < this.received )
+				this.check( );
+			return this.syntaxError == null;
+		}
+		
+		/**
+		 * The syntax error found, or null if there hasn't been one (yet)
+		 */
+		public SYNTAX_ERROR getSyntaxError( ) {
+			return this.syntaxError;
+		}
+		
+		/**
+		 * How many tokens have been checked so far. Their kinds and logic depths in the store won't
+		 * change any more.
+		 */
+		public int getChecked( ) {
+			return this.checked;
+		}
+		
+		/**
+		 * The last @TOKEN_TYPE.LOGIC token seen at the depth, or null if there hasn't been one
+		 */
+		private TOKEN lastLogicAt( int depth ) {
+			if( depth >= 0 )
+				return depth < this.lastLogic.length ? this.lastLogic[ depth ] : null;
+			return -depth - 1 < this.lastLogicBelowZero.length ? this.lastLogicBelowZero[ -depth - 1 ] : null;
+		}
+		
+		private void setLastLogicAt( int depth, TOKEN token ) {
+			if( depth >= 0 ) {
+				if( depth >= this.lastLogic.length )
+					this.lastLogic = Arrays.copyOf( this.lastLogic, Math.max( depth + 1, this.lastLogic.length * 2 ) );
+				this.lastLogic[ depth ] = token;
+			}
+			else {
+				if( -depth - 1 >= this.lastLogicBelowZero.length )
+					this.lastLogicBelowZero = Arrays.copyOf( this.lastLogicBelowZero, Math.max( -depth, this.lastLogicBelowZero.length * 2 ) );
+				this.lastLogicBelowZero[ -depth - 1 ] = token;
+			}
+		}
+		
+		private int kindAt( int count ) {
+			return count >= 0 && count < this.received ? this.ringKinds[ count & RING_MASK ] : KIND_NONE;
+		}
+		
+		private void fail( int count ) {
+			int slot = count & RING_MASK;
+			//System.out.println( "[2nd Pass] Syntax Error on Line " + this.ringLines[ slot ] + " at position " + this.store.getOffset( this.ringIx[ slot ] ) + ": " + this.store.getTokenValue( this.ringIx[ slot ] ) );
+			this.syntaxError = new SYNTAX_ERROR( this.ringLines[ slot ], this.store.getOffset( this.ringIx[ slot ] ), this.store.getTokenValue( this.ringIx[ slot ] ) );
+		}
+		
+		private void check( ) {
+			int count = this.checked++;
+			int slot = count & RING_MASK;
+			
+			// We maintain both a 2-token look-ahead AND a 1-token look-behind just in case
+			int kind = this.ringKinds[ slot ];
+			int prevKind = this.kindAt( count - 1 );
+			int nextKind = this.kindAt( count + 1 );
+			int afterKind = this.kindAt( count + 2 );
+			
+			// only tokens on the same line are juxtaposed
+			int tokenLine = this.ringLines[ slot ];
+			int prevJuxtaposed = prevKind == KIND_NONE || this.ringLines[ (count - 1) & RING_MASK ] < tokenLine ? KIND_NONE : prevKind;
+			int nextJuxtaposed = nextKind == KIND_NONE || this.ringLines[ (count + 1) & RING_MASK ] > tokenLine ? KIND_NONE : nextKind;
+			int afterJuxtaposed = afterKind == KIND_NONE || this.ringLines[ (count + 2) & RING_MASK ] > tokenLine ? KIND_NONE : afterKind;
+			
+			if( !this.juxtapositions.check( kind, prevJuxtaposed, nextJuxtaposed, afterJuxtaposed ) ) {
+				// the token to blame is worked out from the neighbours whichever line they're on
+				switch( this.juxtapositions.getOffending( kind, prevKind, nextKind ) ) {
+					case JUXTAPOSITION_TABLE.BLAME_PRIOR:
+						this.fail( count - 1 );
+						break;
+					case JUXTAPOSITION_TABLE.BLAME_NEXT:
+						this.fail( count + 1 );
+						break;
+					default:
+						this.fail( count );
+						break;
+				}
+				return;
+			}
+			
+			TOKEN t = TOKEN.ofKind( kind );
+			
+			if( t != null && t.getType( ) == TOKEN_TYPE.LOGIC ) {
+				TOKEN logicToken = t;
+				
+				// We increase our logic depth if we hit a new condition/loop
+				switch( logicToken ) {
+					case IF:
+					case LET:
+					case WHILE:
+						this.logicDepth++;
+						break;
+					case DO:
+						this.doCount++;
+						break;
+					default:
+						break;
+				}
+				
+				// peek back to the last logic token at the same depth
+				TOKEN peek = this.lastLogicAt( this.logicDepth );
+				
+				// Debug
+				//System.out.println( (peek != null ? peek.getTokenChars( )  + "\t": "(none)\t") + logicDepth + "\t" + logicToken.getTokenChars( ) + "\t" + logicDepth );
+				
+				boolean flow = true;
+				
+				//Sequence just breaks everything but we make do best we can
+				if( peek != null && peek != TOKEN.SEQUENCE ) {
+					switch( logicToken ) {
+						case THEN:
+							flow = (peek == TOKEN.IF);
+							break;
+						case ELSE:
+							flow = (peek == TOKEN.THEN);
+							break;
+						case IN:
+							flow = (peek == TOKEN.LET);
+							break;
+						case END:
+							flow = (peek == TOKEN.IN || peek == TOKEN.THEN || peek == TOKEN.DO || peek == TOKEN.END);
+							break;
+						case DO:
+							flow = (peek == TOKEN.WHILE);
+							break;
+						//case SEQUENCE:
+							//flow = (doCount <= 0) || (doCount > 0 && (peek == TOKEN.DO));
+							//break;
+						default:
+							break;
+					}
+				}
+				if( !flow ) {
+					this.fail( count );
+					return;
+				}
+				
+				this.setLastLogicAt( this.logicDepth, logicToken );
+				
+				// decrement because we finished at that depth
+				switch( logicToken ) {
+					case ELSE:
+					case END:
+						--this.logicDepth;
+						break;
+					case SEQUENCE:
+						if( this.doCount > 0 )
+							--this.logicDepth;
+						break;
+					default:
+						break;
+				}
+				
+			}
+			
+			int ix = this.ringIx[ slot ];
+			
+			// We replace "do" ;'s with ENDs internally to make them recognizable
+			// during ML->C parsing. Otherwise, we'd have to attempt WAY worse
+			// logic in that phase.
+			if( t == TOKEN.SEQUENCE && this.doCount > 0 ) {
+				this.store.applyHackyDoEndFix( ix );
+				t = TOKEN.END;
+				this.ringKinds[ slot ] = TOKEN.END.getKind( );
+				this.doCount--;
+			}
+			
+			// metadata hack for third pass
+			// the extra hack that "counters" the depth decrement for ELSE and END is
+			// just here so I don't have to debug the whole thing to ensure making a change
+			// above didn't break existing stuff. Ain't enough time to regression test.
+			this.store.setLogicDepth( ix, t != null && t.getType() == TOKEN_TYPE.LOGIC ? (t == TOKEN.ELSE || t == TOKEN.END ? this.logicDepth + 1 : this.logicDepth) : this.logicDepth + 1 );
+		}
+	}
+	
+	/**
+	 * Essentially, a sequence of tokens that are contextually juxtaposed and could be interpreted as a single token
+	 *
+	 */
+	public interface MULTI_TOKEN_SEMANTIC_CHUNK {
+		/**
+		 * Unused, remnant from failed Project2
+		 */
+		public I_VALUE_TOKEN toToken( );
+		
+		/**
+		 * Unused, remnant from failed Project2
+		 */
+		public String getType( );
+		
+		/**
+		 * Returns a String representation of the C code this chunk represents
+		 */
+		public String toCCode( );
+	}
+	
+	/**
+	 * A chunk of tokens that represent a variable declaration
+	 */
+	public static class IDENTIFIER_DECLARATION_SEMANTIC_CHUNK implements MULTI_TOKEN_SEMANTIC_CHUNK {
+		private int depth;
+		private boolean isRef;
+		private boolean isList;
+		private I_TOKEN identifier;
+		private I_TOKEN type;
+		
+		public IDENTIFIER_DECLARATION_SEMANTIC_CHUNK( int depth, I_TOKEN identifier, I_TOKEN type, boolean isRef, boolean isList ) {
+			this.depth = depth;
+			this.identifier = identifier;
+			this.type = type;
+			this.isRef = isRef;
+			this.isList = isList;
+		}
+		
+		public int getDepth( ) { return this.depth; }
+		public String getName( ) { return this.identifier.getTokenChars( ); }
+		
+		public boolean conflictsWith( IDENTIFIER_DECLARATION_SEMANTIC_CHUNK isc ) {
+			return this.getName( ).equals(isc.getName( ) ) && this.getDepth( ) == isc.getDepth( );
+		}
+		
+		@Override
+		public I_VALUE_TOKEN toToken( ) {
+			return null; //this.identifier;
+		}
+		
+		@Override
+		public String getType( ) {
+			return null; //isRef ? "TypeRef#" + this.type.getValueType( ) : this.value.getValueType( );
+		}
+		
+		@Override
+		public String toCCode( ) {
+			// it should be isRef and not isList but the tests seem to say otherwise?
+			return (this.isList ? "list<" + this.type.toCCode( ) + ">" : this.type.toCCode( )) + (this.isList ? "*" : "" ) + " " + this.identifier.getTokenChars( ) + " =";
+		}
+		
+		public String getTypeAsCCode( ) {
+			return this.type.toCCode( );
+		}
+	}
+	
+	public static class EQUIVALENCE_SEMANTIC_CHUNK implements MULTI_TOKEN_SEMANTIC_CHUNK {
+
+		private I_TOKEN left;
+		private I_VALUE_TOKEN right;
+		
+		public EQUIVALENCE_SEMANTIC_CHUNK( I_TOKEN left, I_VALUE_TOKEN right ) {
+			this.left = left;
+			this.right = right;
+		}
+		
+		@Override
+		public I_VALUE_TOKEN toToken() {
+			// TODO Auto-generated method stub
+			return null;
+		}
+
+		@Override
+		public String getType() {
+			// TODO Auto-generated method stub
+			return null;
+		}
+
+		@Override
+		public String toCCode() {
+			// TODO Auto-generated method stub
+			String r;
+			if( right instanceof INT_ARRAY_TOKEN )
+				r = ((INT_ARRAY_TOKEN)right).toCCode( );
+			else if( right instanceof FLOAT_ARRAY_TOKEN )
+				r = ((FLOAT_ARRAY_TOKEN)right).toCCode( );
+			else
+				r = right.getTokenChars( );
+			return left.getTokenChars( ) + " == " + r;
+		}
+		
+	}
+	
+	public static class LIST_OP_SEMANTIC_CHUNK implements MULTI_TOKEN_SEMANTIC_CHUNK {
+		private TOKEN listOp;
+		private I_VALUE_TOKEN list;
+		
+		public LIST_OP_SEMANTIC_CHUNK( TOKEN listOp, I_VALUE_TOKEN list ) {
+			this.listOp = listOp;
+			this.list = list;
+		}
+		
+		@Override
+		public I_VALUE_TOKEN toToken( ) {
+			if( this.list instanceof INT_ARRAY_TOKEN ) {
+				switch( this.listOp ) {
+					case HEAD:
+						return LUTE.intToken( ((INT_ARRAY_TOKEN)this.list).head( ) );
+					case TAIL:
+						return LUTE.intToken( ((INT_ARRAY_TOKEN)this.list).tail( ) );
+					default:
+						return LUTE.ERROR;
+				}
+			}
+			else if( this.list instanceof FLOAT_ARRAY_TOKEN ) {
+				switch( this.listOp ) {
+					case HEAD:
+						return new FLOAT_TOKEN( ((FLOAT_ARRAY_TOKEN)this.list).head( ) );
+					case TAIL:
+						return new FLOAT_TOKEN( ((FLOAT_ARRAY_TOKEN)this.list).tail( ) );
+					default:
+						return LUTE.ERROR;
+				}
+			}
+			else
+				return LUTE.ERROR;
+		}
+		
+		@Override
+		public String getType( ) {
+			return this.toToken( ).getValueType( );
+		}
+		
+		@Override
+		public String toCCode( ) {
+			return "";
+		}
+	}
+	
+	public static class HACKY_COMPARE_LIST_OP_SEMANTIC_CHUNK implements MULTI_TOKEN_SEMANTIC_CHUNK {
+
+		private I_TOKEN left;
+		private I_TOKEN listOp;
+		private I_TOKEN list;
+		
+		public HACKY_COMPARE_LIST_OP_SEMANTIC_CHUNK( I_TOKEN left, I_TOKEN listOp, I_TOKEN list ) {
+			this.left = left;
+			this.listOp = listOp;
+			this.list = list;
+		}
+		
+		@Override
+		public I_VALUE_TOKEN toToken() {
+			// TODO Auto-generated method stub
+			return null;
+		}
+
+		@Override
+		public String getType() {
+			// TODO Auto-generated method stub
+			return null;
+		}
+
+		@Override
+		public String toCCode() {
+			// TODO Auto-generated method stub
+			return left.getTokenChars( ) + " == " + listOp.getTokenChars( ) + "(" + list.getTokenChars( ) + ")";
+		}
+		
+	}
+	
+	public static class LIST_CON_SEMANTIC_CHUNK implements MULTI_TOKEN_SEMANTIC_CHUNK {
+
+		private I_VALUE_TOKEN val;
+		private INT_ARRAY_TOKEN intArray = null;
+		private FLOAT_ARRAY_TOKEN floatArray = null;
+		
+		public LIST_CON_SEMANTIC_CHUNK( I_VALUE_TOKEN val, INT_ARRAY_TOKEN array ) {
+			this.val = val;
+			this.intArray = array;
+		}
+		
+		public LIST_CON_SEMANTIC_CHUNK( I_VALUE_TOKEN val, FLOAT_ARRAY_TOKEN array ) {
+			this.val = val;
+			this.floatArray = array;
+		}
+		
+		@Override
+		public I_VALUE_TOKEN toToken() {
+			// TODO Auto-generated method stub
+			return null;
+		}
+
+		@Override
+		public String getType() {
+			// TODO Auto-generated method stub
+			return null;
+		}
+		
+		@Override
+		public String toCCode( ) {
+			if( this.intArray != null ) {
+				int[] vals = this.intArray.value;
+				if( vals == null )
+					return "new list<int>(" + this.val.getTokenChars() + ",0)";
+				else {
+					StringBuilder sb = new StringBuilder( );
+					sb.append( "new list<int>(" + this.val.getTokenChars() + ",");
+					for( int ix = 0; ix < vals.length; ++ix ) {
+						sb.append( "new list<int>(" + vals[ix] + "," );
+					}
+					sb.append( "0)" );
+					for( int ix = 0; ix < vals.length; ++ix )
+						sb.append( ")" );
+					return sb.toString( );
+				}
+			}
+			else if( this.floatArray != null ) {
+				float[] vals = this.floatArray.value;
+				if( vals == null )
+					return "new list<float>(" + this.val.getTokenChars() + ",0)";
+				else {
+					StringBuilder sb = new StringBuilder( );
+					sb.append( "new list<float>(" + this.val.getTokenChars() + ",");
+					for( int ix = 0; ix < vals.length; ++ix ) {
+						sb.append( "new list<float>(" + vals[ix] + "," );
+					}
+					sb.append( "0)" );
+					for( int ix = 0; ix < vals.length; ++ix )
+						sb.append( ")" );
+					return sb.toString( );
+				}
+			}
+			return "";
+		}
+
+	}
+	
+	// Stupid and hacky because LUTE has no idea what an array using identifiers is
+	// This is basically specifically for the last test, so feel free to call it
+	// hard-coded
+	// Wanted to make it able accept [ !x, !y, !z ] but regex was being a dumb
+	public static class ID_LIST_CON_SEMANTIC_CHUNK implements MULTI_TOKEN_SEMANTIC_CHUNK {
+		private ID_TOKEN val;
+		private boolean isFloat = false;
+		private I_TOKEN token;
+		
+		public ID_LIST_CON_SEMANTIC_CHUNK( ID_TOKEN val, I_TOKEN token ) {
+			this.val = val;
+			this.token = token;
+		}
+		
+		public void setAsFloat( ) {
+			this.isFloat = true;
+		}
+		
+		public ID_TOKEN getConToken( ) {
+			return this.val;
+		}
+		
+		@Override
+		public I_VALUE_TOKEN toToken() {
+			// TODO Auto-generated method stub
+			return null;
+		}
+
+		@Override
+		public String getType() {
+			// TODO Auto-generated method stub
+			return null;
+		}
+		
+		@Override
+		public String toCCode( ) {
+			if( this.token != null ) {
+				StringBuilder sb = new StringBuilder( );
+				sb.append( "new list<" + (this.isFloat ? "float" : "int") + ">(" + this.val.getTokenChars() + ",");
+				sb.append( "new list<" + (this.isFloat ? "float" : "int") + ">(" + this.token.getTokenChars( ) + "," );
+				sb.append( "0))" );
+				return sb.toString( );
+			}
+			return "";
+		}
+
+	}
+	
+	public static class CONDITIONAL_SEMANTIC_CHUNK implements MULTI_TOKEN_SEMANTIC_CHUNK {
+
+		private I_TOKEN cond;
+		private I_TOKEN trueVal;
+		private I_TOKEN falseVal;
+		
+		public CONDITIONAL_SEMANTIC_CHUNK( I_TOKEN cond, I_TOKEN trueVal, I_TOKEN falseVal ) {
+			this.cond = cond;
+			this.trueVal = trueVal;
+			this.falseVal = falseVal;
+		}
+		
+		@Override
+		public I_VALUE_TOKEN toToken() {
+			return null;
+			//boolean b = this.cond instanceof BOOL_TOKEN? ((BOOL_TOKEN)this.cond).getValue( ) : this.cond.getValueAsBoolean( );
+			//return b ? this.trueVal : this.falseVal;
+		}
+
+		@Override
+		public String getType() {
+			return this.toToken( ).getValueType( );
+		}
+		
+		@Override
+		public String toCCode( ) {
+			return cond.getTokenChars() + " ? " + this.trueVal.getTokenChars( ) + " : " + this.falseVal.getTokenChars( );
+		}
+	}
+	
+	public static String tokensAsString( I_TOKEN ... tokens ) {
+		return LUTE.tokensAsString( false, tokens );
+	}
+	
+	public static String tokensAsString( boolean useValues, I_TOKEN ... tokens ) {
+		// Assemble tokens into string. We stupidly use name rather than chars for value tokens because reasons
+		StringBuilder sb = new StringBuilder( );
+		for( int i = 0; i < tokens.length; ++i ) {
+			sb.append( (tokens[i] instanceof I_VALUE_TOKEN || tokens[i] instanceof ID_TOKEN) && !useValues ? tokens[i].getTokenName( ) : tokens[i].getTokenChars( ) );
+			if( i < tokens.length - 1 )
+				sb.append( " " );
+		}
+		return sb.toString( );
+	}
+	
+	
+	/**
+	 * Returns true if the tokens are the start of an identifier declaration (e.g. "val x : int =")
+	 */
+	public static boolean tokensMatchIdentifierDeclaration( I_TOKEN ... tokens ) {
+		int chunk = LUTE.getSemanticChunkAutomaton( ).match( tokens );
+		return chunk == SEMANTIC_CHUNK_AUTOMATON.ID_DECLARATION ||
+				chunk == SEMANTIC_CHUNK_AUTOMATON.REF_ID_DECLARATION ||
+				chunk == SEMANTIC_CHUNK_AUTOMATON.ARRAY_ID_DECLARATION ||
+				chunk == SEMANTIC_CHUNK_AUTOMATON.ARRAY_REF_ID_DECLARATION;
+	}
+	
+	/**
+	 * Returns any valid found semantic chunk for the provided tokens.
+	 * 
+	 * @param depth			The logic depth for the sequence (only necessary for identifier chunks
+	 * @param tokens
+	 * @return				A valid MULTI_TOKEN_SEMANTIC_CHUNK or null
+	 */
+	public static MULTI_TOKEN_SEMANTIC_CHUNK getSemanticChunkForTokens( int depth, I_TOKEN ... tokens ) {
+		int chunk = LUTE.getSemanticChunkAutomaton( ).match( tokens );
+		return chunk < 0 ? null : LUTE.buildSemanticChunk( chunk, depth, tokens );
+	}
+	
+	/**
+	 * Makes the semantic chunk for tokens already known to be in the shape of the given chunk.
+	 * 
+	 * @param chunk			Which chunk, one of the SEMANTIC_CHUNK_AUTOMATON constants
+	 * @param depth			The logic depth for the sequence (only necessary for identifier chunks
+	 * @param tokens
+	 */
+	public static MULTI_TOKEN_SEMANTIC_CHUNK buildSemanticChunk( int chunk, int depth, I_TOKEN ... tokens ) {
+		switch( chunk ) {
+			case SEMANTIC_CHUNK_AUTOMATON.ID_DECLARATION:
+				return new IDENTIFIER_DECLARATION_SEMANTIC_CHUNK( depth, tokens[1], tokens[ 3 ], false, false );
+			case SEMANTIC_CHUNK_AUTOMATON.ARRAY_ID_DECLARATION:
+				return new IDENTIFIER_DECLARATION_SEMANTIC_CHUNK( depth, tokens[1], tokens[ 3 ], false, true );
+			case SEMANTIC_CHUNK_AUTOMATON.REF_ID_DECLARATION:
+				return new IDENTIFIER_DECLARATION_SEMANTIC_CHUNK( depth, tokens[1], tokens[ 3 ], true, false );
+			case SEMANTIC_CHUNK_AUTOMATON.ARRAY_REF_ID_DECLARATION:
+				return new IDENTIFIER_DECLARATION_SEMANTIC_CHUNK( depth, tokens[1], tokens[ 3 ], true, true );
+			
+			case SEMANTIC_CHUNK_AUTOMATON.HACKY_LIST_OP:
+				return new HACKY_COMPARE_LIST_OP_SEMANTIC_CHUNK( tokens[0], tokens[2], tokens[4] );
+			case SEMANTIC_CHUNK_AUTOMATON.HACKY_REF_LIST_OP:
+				return new HACKY_COMPARE_LIST_OP_SEMANTIC_CHUNK( tokens[0], tokens[2], tokens[5] );
+			
+			//CON
+			case SEMANTIC_CHUNK_AUTOMATON.INT_LIST_CON:
+				return new LIST_CON_SEMANTIC_CHUNK( (I_VALUE_TOKEN)tokens[0], (INT_ARRAY_TOKEN)tokens[2] );
+			case SEMANTIC_CHUNK_AUTOMATON.FLOAT_LIST_CON:
+				return new LIST_CON_SEMANTIC_CHUNK( (I_VALUE_TOKEN)tokens[0], (FLOAT_ARRAY_TOKEN)tokens[2] );
+			
+			//ID CON
+			case SEMANTIC_CHUNK_AUTOMATON.ID_LIST_CON:
+				return new ID_LIST_CON_SEMANTIC_CHUNK( (ID_TOKEN)tokens[0], tokens[4] );
+			
+			case SEMANTIC_CHUNK_AUTOMATON.EQUIVALENCE:
+				return new EQUIVALENCE_SEMANTIC_CHUNK( tokens[0], (I_VALUE_TOKEN)tokens[2] );
+			
+			case SEMANTIC_CHUNK_AUTOMATON.CONDITIONAL:
+				return new CONDITIONAL_SEMANTIC_CHUNK( tokens[1], tokens[3], tokens[5] );
+			
+			default:
+				return null;
+		}
+	}
+	
+	private static volatile SEMANTIC_CHUNK_AUTOMATON semanticChunkAutomaton;
+	
+	/**
+	 * The semantic chunk shapes compiled into an automaton, the first time they're needed (by whichever
+	 * compilation, see @getJuxtapositionTable)
+	 */
+	public static SEMANTIC_CHUNK_AUTOMATON getSemanticChunkAutomaton( ) {
+		SEMANTIC_CHUNK_AUTOMATON automaton = LUTE.semanticChunkAutomaton;
+		if( automaton == null )
+			LUTE.semanticChunkAutomaton = automaton = new SEMANTIC_CHUNK_AUTOMATON( );
+		return automaton;
+	}
+	
+	/**
+	 * Semantic Chunk Automaton <br />
+	 * Every shape of multi-token semantic chunk, compiled into one DFA over token kinds. <br />
+	 * The shapes are written as the tokens' chars (names for value tokens) separated by spaces, with
+	 * (a|b) for a choice, the same as the strings tokensAsString( ) used to build for them. <br />
+	 * Walking the DFA from a token finds every chunk starting there in a single pass, and it dies after
+	 * at most the longest shape's worth of tokens. Where more than one shape matches the same tokens,
+	 * the first in SHAPES wins.
+	 */
+	public static class SEMANTIC_CHUNK_AUTOMATON {
+		public static final int ID_DECLARATION = 0;
+		public static final int ARRAY_ID_DECLARATION = 1;
+		public static final int REF_ID_DECLARATION = 2;
+		public static final int ARRAY_REF_ID_DECLARATION = 3;
+		public static final int HACKY_LIST_OP = 4;
+		public static final int HACKY_REF_LIST_OP = 5;
+		public static final int INT_LIST_CON = 6;
+		public static final int FLOAT_LIST_CON = 7;
+		public static final int ID_LIST_CON = 8;
+		public static final int EQUIVALENCE = 9;
+		public static final int CONDITIONAL = 10;
+		
+		/**
+		 * The most matches one scan can report, one per shape length
+		 */
+		public static final int MAX_MATCHES = 8;
+		
+		private final String[] SHAPES = {
+			"val ID : (int|real|bool) =",
+			"val ID : (int|real) list =",
+			"val ID : (int|real|bool) ref =",
+			"val ID : (int|real) list ref =",
+			"ID = (hd|tl) ( ID )",
+			"ID = (hd|tl) ( ! ID )",
+			"INT :: INT_ARRAY",
+			"FLOAT :: FLOAT_ARRAY",
+			"ID :: [ ! ID ]",
+			"(ID|INT|FLOAT|BOOL) = (INT|FLOAT|BOOL|INT_ARRAY|FLOAT_ARRAY)",
+			"if (ID|INT|FLOAT|BOOL) then (ID|INT|FLOAT|BOOL) else (ID|INT|FLOAT|BOOL)"
+		};
+		
+		private static final int DEAD = -1;
+		private static final int START = 0;
+		
+		// transitions[ state * KIND_COUNT + kind ], and the chunk each state accepts (or -1)
+		private int[] transitions;
+		private int[] accepts;
+		
+		public SEMANTIC_CHUNK_AUTOMATON( ) {
+			// which chars/names stand for which kinds
+			I_TOKEN[] samples = LUTE.sampleTokens( );
+			
+			// Every (shape, step) pair is one position of the NFA; a DFA state is the set of positions
+			// still alive, as bits of a long. bit[ i ] is set if the kind matches that step.
+			int positions = 0;
+			for( String shape : this.SHAPES )
+				positions += shape.split( " " ).length;
+			if( positions > 64 )
+				throw new IllegalStateException( "Too many semantic chunk shapes for the automaton" );
+			
+			boolean[][] stepKinds = new boolean[ positions ][ ];
+			int[] stepShape = new int[ positions ];
+			boolean[] lastStep = new boolean[ positions ];
+			long start = 0;
+			int position = 0;
+			for( int shape = 0; shape < this.SHAPES.length; ++shape ) {
+				String[] steps = this.SHAPES[ shape ].split( " " );
+				start |= 1L << position;
+				for( int step = 0; step < steps.length; ++step, ++position ) {
+					stepKinds[ position ] = this.kindsFor( steps[ step ], samples );
+					stepShape[ position ] = shape;
+					lastStep[ position ] = step == steps.length - 1;
+				}
+			}
+			
+			// subset construction, states numbered in the order they're found
+			long[] states = new long[ 16 ];
+			states[ START ] = start;
+			int stateCount = 1;
+			this.transitions = new int[ 16 * KIND_COUNT ];
+			this.accepts = new int[ 16 ];
+			this.accepts[ START ] = -1;
+			
+			for( int state = 0; state < stateCount; ++state ) {
+				for( int kind = 0; kind < KIND_COUNT; ++kind ) {
+					long next = 0;
+					int accept = -1;
+					for( long alive = states[ state ]; alive != 0; alive &= alive - 1 ) {
+						int p = Long.numberOfTrailingZeros( alive );
+						if( !stepKinds[ p ][ kind ] )
+							continue;
+						if( !lastStep[ p ] )
+							next |= 1L << (p + 1);
+						else if( accept < 0 || stepShape[ p ] < accept )
+							accept = stepShape[ p ];
+					}
+					
+					int target = DEAD;
+					if( next != 0 || accept >= 0 ) {
+						// states are told apart by what's alive and what they accept
+						for( int known = 1; known < stateCount && target == DEAD; ++known )
+							if( states[ known ] == next && this.accepts[ known ] == accept )
+								target = known;
+						if( target == DEAD ) {
+							if( stateCount == states.length ) {
+								states = Arrays.copyOf( states, stateCount * 2 );
+								this.accepts = Arrays.copyOf( this.accepts, stateCount * 2 );
+								this.transitions = Arrays.copyOf( this.transitions, stateCount * 2 * KIND_COUNT );
+							}
+							target = stateCount++;
+							states[ target ] = next;
+							this.accepts[ target ] = accept;
+						}
+					}
+					this.transitions[ state * KIND_COUNT + kind ] = target;
+				}
+			}
+		}
+		
+		/**
+		 * Scans the tokens in the store from index from (inclusive) up to to (exclusive), finding every
+		 * chunk that starts at from. The length of each goes in lengths and which chunk it is in chunks,
+		 * shortest first. Returns how many were found.
+		 */
+		public int scan( I_TOKEN_STORE store, int from, int to, int[] lengths, int[] chunks ) {
+			int found = 0;
+			int state = START;
+			for( int ix = from; ix < to; ++ix ) {
+				state = this.transitions[ state * KIND_COUNT + store.getKind( ix ) ];
+				if( state == DEAD )
+					break;
+				if( this.accepts[ state ] >= 0 ) {
+					lengths[ found ] = ix + 1 - from;
+					chunks[ found++ ] = this.accepts[ state ];
+				}
+			}
+			return found;
+		}
+		
+		/**
+		 * Returns the chunk the tokens are exactly the shape of, or -1 if none
+		 */
+		public int match( I_TOKEN ... tokens ) {
+			int state = START;
+			for( int ix = 0; ix < tokens.length && state != DEAD; ++ix )
+				state = this.transitions[ state * KIND_COUNT + tokens[ ix ].getKind( ) ];
+			return state == DEAD || tokens.length == 0 ? -1 : this.accepts[ state ];
+		}
+		
+		private boolean[] kindsFor( String step, I_TOKEN[] samples ) {
+			String[] choices = step.length( ) > 1 && step.startsWith( "(" ) && step.endsWith( ")" ) ?
+					step.substring( 1, step.length( ) - 1 ).split( "\\|" ) :
+					new String[] { step };
+			
+			boolean[] kinds = new boolean[ KIND_COUNT ];
+			for( int kind = 0; kind < KIND_COUNT; ++kind ) {
+				I_TOKEN sample = samples[ kind ];
+				String name = sample instanceof I_VALUE_TOKEN || sample instanceof ID_TOKEN ? sample.getTokenName( ) : sample.getTokenChars( );
+				for( String choice : choices )
+					kinds[ kind ] = kinds[ kind ] || choice.equals( name );
+			}
+			return kinds;
+		}
+	}
+	
+	/**
+	 * Syntax Node <br />
+	 * A node of the tree the @SYNTAX_PARSER makes of the program, one class per thing the language has
+	 * (let ... in ... end, val declarations, if, while, refs, lists, hd/tl, :: and the other operators),
+	 * with the literals and identifiers as @ATOM_NODE leaves. <br />
+	 * Nodes keep the tokens they were made from and the logic depth of those tokens, but not where
+	 * they were in the store, so the store can let go of the tokens once they're parsed.
+	 */
+	public static abstract class SYNTAX_NODE {
+		// what sequenced is when the node isn't followed by a ;
+		public static final int NOT_SEQUENCED = Integer.MIN_VALUE;
+		
+		// the logic depth of the node's own token (the operator, the if, the let...)
+		public final int depth;
+		
+		// the logic depth of the ; after the node, if it's an item of a sequence with one
+		protected int sequenced = NOT_SEQUENCED;
+		
+		protected SYNTAX_NODE( int depth ) {
+			this.depth = depth;
+		}
+		
+		public boolean isSequenced( ) { return this.sequenced != NOT_SEQUENCED; }
+		public int getSequenceDepth( ) { return this.sequenced; }
+		
+		/**
+		 * The operand the node's text starts with, if it starts with one (e.g. the left of a binop)
+		 */
+		protected SYNTAX_NODE leftOperand( ) {
+			return null;
+		}
+		
+		/**
+		 * The operand the node's text ends with, if it ends with one (e.g. the right of a binop)
+		 */
+		protected SYNTAX_NODE rightOperand( ) {
+			return null;
+		}
+		
+		/**
+		 * The node whose text the node's text starts with, going down through the left operands
+		 */
+		public SYNTAX_NODE leftmost( ) {
+			SYNTAX_NODE node = this;
+			while( node.leftOperand( ) != null )
+				node = node.leftOperand( );
+			return node;
+		}
+		
+		/**
+		 * The node whose text the node's text ends with, going down through the right operands
+		 */
+		public SYNTAX_NODE rightmost( ) {
+			SYNTAX_NODE node = this;
+			while( node.rightOperand( ) != null )
+				node = node.rightOperand( );
+			return node;
+		}
+	}
+	
+	/**
+	 * The whole program, its items in order
+	 */
+	public static class PROGRAM_NODE extends SYNTAX_NODE {
+		public final ArrayList<SYNTAX_NODE> items = new ArrayList<SYNTAX_NODE>( );
+		
+		public PROGRAM_NODE( ) {
+			super( 0 );
+		}
+	}
+	
+	/**
+	 * An identifier or a literal (int, real, bool, unit or a list of ints or reals)
+	 */
+	public static class ATOM_NODE extends SYNTAX_NODE {
+		public final I_TOKEN token;
+		
+		public ATOM_NODE( int depth, I_TOKEN token ) {
+			super( depth );
+			this.token = token;
+		}
+		
+		public boolean isIdentifier( ) {
+			return this.token instanceof ID_TOKEN;
+		}
+	}
+	
+	/**
+	 * val identifier : type [list] [ref] = value
+	 */
+	public static class VAL_NODE extends SYNTAX_NODE {
+		public final ID_TOKEN identifier;
+		public final TOKEN typedef;
+		public final boolean isList;
+		public final boolean isRef;
+		public final SYNTAX_NODE value;
+		
+		public VAL_NODE( int depth, ID_TOKEN identifier, TOKEN typedef, boolean isList, boolean isRef, SYNTAX_NODE value ) {
+			super( depth );
+			this.identifier = identifier;
+			this.typedef = typedef;
+			this.isList = isList;
+			this.isRef = isRef;
+			this.value = value;
+		}
+		
+		/**
+		 * The slot type it declares, see @LINEAR_IR
+		 */
+		public int getType( ) {
+			int type = this.typedef == TOKEN.FLOAT_TYPEDEF ? LINEAR_IR.TYPE_REAL : this.typedef == TOKEN.BOOLEAN_TYPEDEF ? LINEAR_IR.TYPE_BOOL : LINEAR_IR.TYPE_INT;
+			return type | (this.isList ? LINEAR_IR.SLOT_LIST : 0) | (this.isRef ? LINEAR_IR.SLOT_REF : 0);
+		}
+		
+		@Override
+		protected SYNTAX_NODE rightOperand( ) {
+			return this.value;
+		}
+	}
+	
+	/**
+	 * let declarations in body end, the body being a sequence of its own
+	 */
+	public static class LET_NODE extends SYNTAX_NODE {
+		public final ArrayList<VAL_NODE> declarations = new ArrayList<VAL_NODE>( );
+		public final ArrayList<SYNTAX_NODE> body = new ArrayList<SYNTAX_NODE>( );
+		
+		public LET_NODE( int depth ) {
+			super( depth );
+		}
+	}
+	
+	/**
+	 * if condition then whenTrue else whenFalse
+	 */
+	public static class IF_NODE extends SYNTAX_NODE {
+		public SYNTAX_NODE condition;
+		public SYNTAX_NODE whenTrue;
+		public SYNTAX_NODE whenFalse;
+		
+		public IF_NODE( int depth ) {
+			super( depth );
+		}
+		
+		@Override
+		protected SYNTAX_NODE rightOperand( ) {
+			return this.whenFalse;
+		}
+	}
+	
+	/**
+	 * while condition do body, the end being the ; after the body (see @FLOW_VALIDATOR.applyHackyDoEndFix)
+	 */
+	public static class WHILE_NODE extends SYNTAX_NODE {
+		public SYNTAX_NODE condition;
+		public SYNTAX_NODE body;
+		
+		public WHILE_NODE( int depth ) {
+			super( depth );
+		}
+	}
+	
+	/**
+	 * ( items ), the items being a sequence of their own (or nothing at all)
+	 */
+	public static class GROUP_NODE extends SYNTAX_NODE {
+		public final ArrayList<SYNTAX_NODE> items = new ArrayList<SYNTAX_NODE>( );
+		
+		public GROUP_NODE( int depth ) {
+			super( depth );
+		}
+	}
+	
+	/**
+	 * [ elements ], for lists that aren't all literals (those are a single @ATOM_NODE)
+	 */
+	public static class LIST_NODE extends SYNTAX_NODE {
+		public final ArrayList<SYNTAX_NODE> elements = new ArrayList<SYNTAX_NODE>( );
+		
+		public LIST_NODE( int depth ) {
+			super( depth );
+		}
+	}
+	
+	/**
+	 * ref operand
+	 */
+	public static class REF_NODE extends SYNTAX_NODE {
+		public final SYNTAX_NODE operand;
+		
+		public REF_NODE( int depth, SYNTAX_NODE operand ) {
+			super( depth );
+			this.operand = operand;
+		}
+		
+		@Override
+		protected SYNTAX_NODE rightOperand( ) {
+			return this.operand;
+		}
+	}
+	
+	/**
+	 * !operand, reading a ref
+	 */
+	public static class DEREF_NODE extends SYNTAX_NODE {
+		public final SYNTAX_NODE operand;
+		
+		public DEREF_NODE( int depth, SYNTAX_NODE operand ) {
+			super( depth );
+			this.operand = operand;
+		}
+		
+		@Override
+		protected SYNTAX_NODE rightOperand( ) {
+			return this.operand;
+		}
+	}
+	
+	/**
+	 * hd operand or tl operand
+	 */
+	public static class LIST_OP_NODE extends SYNTAX_NODE {
+		// TOKEN.HEAD or TOKEN.TAIL
+		public final TOKEN op;
+		public final SYNTAX_NODE operand;
+		
+		public LIST_OP_NODE( int depth, TOKEN op, SYNTAX_NODE operand ) {
+			super( depth );
+			this.op = op;
+			this.operand = operand;
+		}
+		
+		@Override
+		protected SYNTAX_NODE rightOperand( ) {
+			return this.operand;
+		}
+	}
+	
+	/**
+	 * head :: tail
+	 */
+	public static class CONS_NODE extends SYNTAX_NODE {
+		public final SYNTAX_NODE head;
+		public final SYNTAX_NODE tail;
+		
+		public CONS_NODE( int depth, SYNTAX_NODE head, SYNTAX_NODE tail ) {
+			super( depth );
+			this.head = head;
+			this.tail = tail;
+		}
+		
+		@Override
+		protected SYNTAX_NODE leftOperand( ) {
+			return this.head;
+		}
+		
+		@Override
+		protected SYNTAX_NODE rightOperand( ) {
+			return this.tail;
+		}
+	}
+	
+	/**
+	 * target := value
+	 */
+	public static class ASSIGN_NODE extends SYNTAX_NODE {
+		public final SYNTAX_NODE target;
+		public final SYNTAX_NODE value;
+		
+		public ASSIGN_NODE( int depth, SYNTAX_NODE target, SYNTAX_NODE value ) {
+			super( depth );
+			this.target = target;
+			this.value = value;
+		}
+		
+		@Override
+		protected SYNTAX_NODE leftOperand( ) {
+			return this.target;
+		}
+		
+		@Override
+		protected SYNTAX_NODE rightOperand( ) {
+			return this.value;
+		}
+	}
+	
+	/**
+	 * left op right, for the arithmetic, comparison and logic operators
+	 */
+	public static class BINOP_NODE extends SYNTAX_NODE {
+		public final TOKEN op;
+		public final SYNTAX_NODE left;
+		public final SYNTAX_NODE right;
+		
+		public BINOP_NODE( int depth, TOKEN op, SYNTAX_NODE left, SYNTAX_NODE right ) {
+			super( depth );
+			this.op = op;
+			this.left = left;
+			this.right = right;
+		}
+		
+		@Override
+		protected SYNTAX_NODE leftOperand( ) {
+			return this.left;
+		}
+		
+		@Override
+		protected SYNTAX_NODE rightOperand( ) {
+			return this.right;
+		}
+	}
+	
+	/**
+	 * not operand or - operand
+	 */
+	public static class UNARY_NODE extends SYNTAX_NODE {
+		// TOKEN.NOT or TOKEN.SUB
+		public final TOKEN op;
+		public final SYNTAX_NODE operand;
+		
+		public UNARY_NODE( int depth, TOKEN op, SYNTAX_NODE operand ) {
+			super( depth );
+			this.op = op;
+			this.operand = operand;
+		}
+		
+		@Override
+		protected SYNTAX_NODE rightOperand( ) {
+			return this.operand;
+		}
+	}
+	
+	/**
+	 * Syntax Parser <br />
+	 * Parses the validated tokens of a store into a tree of @SYNTAX_NODE, in one pass from left to
+	 * right, by recursive descent over the grammar of the language: <br />
+	 * <br />
+	 * program		:= item { ; item } [ ; ] <br />
+	 * item			:= val ID : (int|real|bool) [ list ] [ ref ] = expression | expression <br />
+	 * expression	:= { prefix } operand { binop { prefix } operand } <br />
+	 * prefix		:= ! | ref | not | - | hd | tl <br />
+	 * binop		:= or | and | := | = | &lt; | &gt; | &lt;= | &gt;= | :: | + | - | * | / (loosest first, := and :: to the right) <br />
+	 * operand		:= ID | literal | ( [ expression { ; expression } ] ) | [ expression { , expression } ] <br />
+	 * 				 | let { val ... [ ; ] } in expression { ; expression } end <br />
+	 * 				 | if expression then expression else expression <br />
+	 * 				 | while expression do expression ; <br />
+	 * <br />
+	 * The ; that ends a while loop is an END by now (see @FLOW_VALIDATOR.applyHackyDoEndFix), and does
+	 * for the ; after it too, so the next item can follow it straight away. <br />
+	 * Rather than each rule calling the next, the rules being parsed are frames on a stack of our own,
+	 * so no amount of nesting can overflow the call stack, and the tokens can be handed over a few at a
+	 * time as they're read (see @parse( int, int )), the items of the program coming out as each one is
+	 * finished. Whatever doesn't fit the grammar is a syntax error on the token where it stopped fitting.
+	 */
+	public static class SYNTAX_PARSER {
+		// what a frame is parsing
+		private static final int PROGRAM = 0;
+		private static final int VAL = 1;
+		private static final int LET = 2;
+		private static final int IF = 3;
+		private static final int WHILE = 4;
+		private static final int GROUP = 5;
+		private static final int LIST = 6;
+		private static final int EXPRESSION = 7;
+		
+		// what a frame expects next; the program, let bodies, groups and lists go item, separator, item...
+		private static final int FIRST_ITEM = 0;
+		private static final int NEXT_ITEM = 1;
+		private static final int AFTER_ITEM = 2;
+		
+		// a let's declarations, before its in
+		private static final int DECLARATIONS = 3;
+		private static final int AFTER_DECLARATION = 4;
+		
+		// a val's identifier, :, type, then list, ref or =
+		private static final int NAME = 5;
+		private static final int COLON = 6;
+		private static final int TYPE = 7;
+		private static final int TYPE_SUFFIX = 8;
+		
+		// the part of a val, if or while whose expression is being parsed, and so is next to be handed over
+		private static final int VALUE = 9;
+		private static final int THEN = 10;
+		private static final int ELSE = 11;
+		private static final int DO = 12;
+		private static final int END = 13;
+		
+		// an expression's operand, or a binop
+		private static final int OPERAND = 14;
+		private static final int OPERATOR = 15;
+		
+		// marks the prefixes on an expression's stack of operators
+		private static final int PREFIX = 0x100;
+		
+		/**
+		 * A rule being parsed, and how far it's got
+		 */
+		private static class PARSE_FRAME {
+			int kind;
+			int state;
+			int depth;
+			
+			// the let, if, while, group or list being filled in
+			SYNTAX_NODE node;
+			
+			// the item parsed last, for the ; after it
+			SYNTAX_NODE lastItem;
+			
+			// a val's declaration
+			ID_TOKEN identifier;
+			TOKEN typedef;
+			boolean isList;
+			boolean isRef;
+			
+			// an expression's operands, and the operators (token kinds) still waiting for theirs
+			final ArrayList<SYNTAX_NODE> operands = new ArrayList<SYNTAX_NODE>( );
+			int[] operators = new int[ 8 ];
+			int[] operatorDepths = new int[ 8 ];
+			int operatorCount;
+		}
+		
+		private final I_TOKEN_STORE store;
+		
+		// the rules being parsed, the program first; frames from top up are kept to be used again
+		private final ArrayList<PARSE_FRAME> frames = new ArrayList<PARSE_FRAME>( );
+		private int top = 0;
+		
+		private final PROGRAM_NODE program = new PROGRAM_NODE( );
+		
+		// whether the token before the one being parsed was the end of a while loop
+		private boolean afterLoop = false;
+		private boolean loopEnded = false;
+		
+		// the last token handed over, which is blamed if the program stops short
+		private int last = -1;
+		
+		private SYNTAX_ERROR syntaxError = null;
+		
+		public SYNTAX_PARSER( I_TOKEN_STORE store ) {
+			this.store = store;
+			this.push( PROGRAM, FIRST_ITEM, 0 );
+		}
+		
+		/**
+		 * Parses every token in the store.
+		 * 
+		 * @return			The program, or null if there's a syntax error (see @getSyntaxError)
+		 */
+		public PROGRAM_NODE parse( ) {
+			return this.parse( 0, this.store.size( ) ) && this.finish( ) ? this.program : null;
+		}
+		
+		/**
+		 * Parses the tokens from up to to, carrying on from those before. The items of the program it
+		 * finishes are added to @getParsed. <br />
+		 * The last token handed over has to be kept in the store until the next are, in case it's blamed.
+		 * 
+		 * @return			false if there's a syntax error (see @getSyntaxError)
+		 */
+		public boolean parse( int from, int to ) {
+			for( int ix = from; ix < to && this.syntaxError == null; ++ix ) {
+				this.afterLoop = this.loopEnded;
+				this.loopEnded = false;
+				this.accept( this.store.getKind( ix ), ix );
+				this.last = ix;
+			}
+			return this.syntaxError == null;
+		}
+		
+		/**
+		 * Ends the program after the tokens handed over so far.
+		 * 
+		 * @return			false if it can't end there, i.e. there's a syntax error (see @getSyntaxError)
+		 */
+		public boolean finish( ) {
+			if( this.syntaxError == null && this.last >= 0 ) {
+				this.afterLoop = this.loopEnded;
+				this.accept( KIND_EOF, this.last );
+			}
+			return this.syntaxError == null;
+		}
+		
+		/**
+		 * The items of the program finished since @forget was last called, in order. An item isn't
+		 * finished until the token after it (its ;, say) has been parsed as well.
+		 */
+		public ArrayList<SYNTAX_NODE> getParsed( ) {
+			return this.program.items;
+		}
+		
+		/**
+		 * Lets go of the items finished so far, once they've been used
+		 */
+		public void forget( ) {
+			this.program.items.clear( );
+		}
+		
+		public SYNTAX_ERROR getSyntaxError( ) {
+			return this.syntaxError;
+		}
+		
+		/**
+		 * Starts over with an empty program, for the store's next tokens. Lists that have grown past
+		 * capacity are let go of.
+		 */
+		public void reset( int capacity ) {
+			LUTE.clear( this.program.items, capacity );
+			LUTE.clear( this.frames, capacity );
+			this.top = 0;
+			this.push( PROGRAM, FIRST_ITEM, 0 );
+			this.afterLoop = false;
+			this.loopEnded = false;
+			this.last = -1;
+			this.syntaxError = null;
+		}
+		
+		private void accept( int kind, int ix ) {
+			// the token is handed down to whichever frame is on top, until one takes it; the frames it
+			// finishes on the way hand what they've parsed over to the frame under them
+			TOKEN token = TOKEN.ofKind( kind );
+			boolean taken = false;
+			while( !taken && this.syntaxError == null )
+				taken = this.step( this.frames.get( this.top - 1 ), kind, token, ix );
+		}
+		
+		/**
+		 * Moves the frame on by the token.
+		 * 
+		 * @return			Whether the token's been used up, rather than left for the frame on top next
+		 */
+		private boolean step( PARSE_FRAME frame, int kind, TOKEN token, int ix ) {
+			switch( frame.kind ) {
+				case PROGRAM:
+				case LET:
+				case GROUP:
+				case LIST:
+					return this.stepSequence( frame, kind, token, ix );
+				case VAL:
+					return this.stepVal( frame, kind, token, ix );
+				case IF:
+					if( frame.state == THEN && token == TOKEN.THEN ) {
+						frame.state = ELSE;
+						this.push( EXPRESSION, OPERAND, frame.depth );
+						return true;
+					}
+					if( frame.state == ELSE && token == TOKEN.ELSE ) {
+						frame.state = VALUE;
+						this.push( EXPRESSION, OPERAND, frame.depth );
+						return true;
+					}
+					return this.reject( ix );
+				case WHILE:
+					if( frame.state == DO && token == TOKEN.DO ) {
+						frame.state = END;
+						this.push( EXPRESSION, OPERAND, frame.depth );
+						return true;
+					}
+					if( frame.state == END && token == TOKEN.END ) {
+						this.loopEnded = true;
+						this.deliver( frame.node );
+						return true;
+					}
+					return this.reject( ix );
+				default:
+					return this.stepExpression( frame, kind, token, ix );
+			}
+		}
+		
+		private boolean stepSequence( PARSE_FRAME frame, int kind, TOKEN token, int ix ) {
+			switch( frame.state ) {
+				case DECLARATIONS:
+				case AFTER_DECLARATION:
+					if( frame.state == AFTER_DECLARATION && token == TOKEN.SEQUENCE ) {
+						frame.lastItem.sequenced = this.store.getLogicDepth( ix );
+						frame.state = DECLARATIONS;
+					}
+					else if( token == TOKEN.VALUE ) {
+						frame.state = AFTER_DECLARATION;
+						this.push( VAL, NAME, this.store.getLogicDepth( ix ) );
+					}
+					else if( token == TOKEN.IN )
+						frame.state = FIRST_ITEM;
+					else
+						return this.reject( ix );
+					return true;
+				
+				case AFTER_ITEM:
+					if( token == (frame.kind == LIST ? TOKEN.COMMA : TOKEN.SEQUENCE) ) {
+						if( token == TOKEN.SEQUENCE )
+							frame.lastItem.sequenced = this.store.getLogicDepth( ix );
+						this.settle( frame );
+						frame.state = NEXT_ITEM;
+						return true;
+					}
+					if( this.closes( frame, kind, token ) ) {
+						this.settle( frame );
+						return this.close( frame, kind );
+					}
+					
+					// the end of a loop does for a ; too
+					if( !this.afterLoop || frame.kind == LIST )
+						return this.reject( ix );
+					this.settle( frame );
+					return this.startItem( frame, kind, token, ix );
+				
+				default:
+					if( this.closes( frame, kind, token ) && (frame.state == FIRST_ITEM || frame.kind == PROGRAM) && frame.kind != LET )
+						return this.close( frame, kind );
+					return this.startItem( frame, kind, token, ix );
+			}
+		}
+		
+		/**
+		 * Adds the program's last item to @getParsed, once what follows it shows it's whole
+		 */
+		private void settle( PARSE_FRAME frame ) {
+			if( frame.kind == PROGRAM )
+				this.program.items.add( frame.lastItem );
+		}
+		
+		/**
+		 * Whether the token ends what the frame is parsing: the end of the program, a let's end, ) or ]
+		 */
+		private boolean closes( PARSE_FRAME frame, int kind, TOKEN token ) {
+			switch( frame.kind ) {
+				case PROGRAM:
+					return kind == KIND_EOF;
+				case LET:
+					return token == TOKEN.END;
+				case GROUP:
+					return token == TOKEN.RIGHT_PAREN;
+				default:
+					return token == TOKEN.RIGHT_BRACKET;
+			}
+		}
+		
+		private boolean close( PARSE_FRAME frame, int kind ) {
+			// the program just stays open, there being nothing after the end
+			if( kind == KIND_EOF )
+				return true;
+			
+			this.deliver( frame.node );
+			return true;
+		}
+		
+		private boolean startItem( PARSE_FRAME frame, int kind, TOKEN token, int ix ) {
+			if( token == TOKEN.VALUE && frame.kind == PROGRAM ) {
+				frame.state = AFTER_ITEM;
+				this.push( VAL, NAME, this.store.getLogicDepth( ix ) );
+				return true;
+			}
+			if( !SYNTAX_PARSER.startsOperand( kind, token ) )
+				return this.reject( ix );
+			
+			// the expression takes the token from here
+			frame.state = AFTER_ITEM;
+			this.push( EXPRESSION, OPERAND, frame.depth );
+			return false;
+		}
+		
+		private boolean stepVal( PARSE_FRAME frame, int kind, TOKEN token, int ix ) {
+			switch( frame.state ) {
+				case NAME:
+					if( kind != KIND_ID )
+						return this.reject( ix );
+					frame.identifier = (ID_TOKEN)this.store.getToken( ix );
+					frame.state = COLON;
+					return true;
+				case COLON:
+					if( token != TOKEN.TYPEDEF )
+						return this.reject( ix );
+					frame.state = TYPE;
+					return true;
+				case TYPE:
+					if( token != TOKEN.INTEGER_TYPEDEF && token != TOKEN.FLOAT_TYPEDEF && token != TOKEN.BOOLEAN_TYPEDEF )
+						return this.reject( ix );
+					frame.typedef = token;
+					frame.state = TYPE_SUFFIX;
+					return true;
+				case TYPE_SUFFIX:
+					if( token == TOKEN.LIST && !frame.isList && !frame.isRef )
+						frame.isList = true;
+					else if( token == TOKEN.REF && !frame.isRef )
+						frame.isRef = true;
+					else if( token == TOKEN.EQUALS ) {
+						frame.state = VALUE;
+						this.push( EXPRESSION, OPERAND, frame.depth );
+					}
+					else
+						return this.reject( ix );
+					return true;
+				default:
+					return this.reject( ix );
+			}
+		}
+		
+		private boolean stepExpression( PARSE_FRAME frame, int kind, TOKEN token, int ix ) {
+			int depth = kind == KIND_EOF ? 0 : this.store.getLogicDepth( ix );
+			if( frame.state == OPERATOR ) {
+				// a binop carries the expression on, anything else is after the end of it (as is
+				// anything after the end of a loop, which stands for a ;)
+				int precedence = SYNTAX_PARSER.precedence( token );
+				if( precedence == 0 || this.afterLoop ) {
+					while( frame.operatorCount > 0 )
+						this.reduce( frame );
+					this.deliver( frame.operands.get( 0 ) );
+					return false;
+				}
+				
+				// everything before that binds at least as tightly is done with first
+				boolean rightAssociative = token == TOKEN.ASSIGN || token == TOKEN.CONS;
+				while( frame.operatorCount > 0 ) {
+					int before = SYNTAX_PARSER.precedence( TOKEN.ofKind( frame.operators[ frame.operatorCount - 1 ] ) );
+					if( before < precedence || (before == precedence && rightAssociative) )
+						break;
+					this.reduce( frame );
+				}
+				this.pushOperator( frame, kind, depth );
+				frame.state = OPERAND;
+				return true;
+			}
+			
+			if( token == null ) {
+				if( kind >= KIND_ID && kind <= KIND_FLOAT_ARRAY )
+					this.operand( frame, this.atom( ix ) );
+				else
+					this.reject( ix );
+				return true;
+			}
+			
+			switch( token ) {
+				case READ_REF:
+				case REF:
+				case NOT:
+				case SUB:
+				case HEAD:
+				case TAIL:
+					this.pushOperator( frame, kind | PREFIX, depth );
+					break;
+				case LEFT_PAREN:
+					this.push( GROUP, FIRST_ITEM, depth ).node = new GROUP_NODE( depth );
+					break;
+				case LEFT_BRACKET:
+					this.push( LIST, FIRST_ITEM, depth ).node = new LIST_NODE( depth );
+					break;
+				case LET:
+					this.push( LET, DECLARATIONS, depth ).node = new LET_NODE( depth );
+					break;
+				case IF:
+					this.push( IF, THEN, depth ).node = new IF_NODE( depth );
+					this.push( EXPRESSION, OPERAND, depth );
+					break;
+				case WHILE:
+					this.push( WHILE, DO, depth ).node = new WHILE_NODE( depth );
+					this.push( EXPRESSION, OPERAND, depth );
+					break;
+				default:
+					return this.reject( ix );
+			}
+			return true;
+		}
+		
+		/**
+		 * Whether an expression can start with the token
+		 */
+		private static boolean startsOperand( int kind, TOKEN token ) {
+			if( token == null )
+				return kind >= KIND_ID && kind <= KIND_FLOAT_ARRAY;
+			switch( token ) {
+				case READ_REF:
+				case REF:
+				case NOT:
+				case SUB:
+				case HEAD:
+				case TAIL:
+				case LEFT_PAREN:
+				case LEFT_BRACKET:
+				case LET:
+				case IF:
+				case WHILE:
+					return true;
+				default:
+					return false;
+			}
+		}
+		
+		/**
+		 * How tightly the binop binds, from 1 (or) up, or 0 if the token isn't a binop
+		 */
+		private static int precedence( TOKEN token ) {
+			if( token == null )
+				return 0;
+			switch( token ) {
+				case OR:
+					return 1;
+				case AND:
+					return 2;
+				case ASSIGN:
+					return 3;
+				case EQUALS:
+				case LT:
+				case GT:
+				case LTE:
+				case GTE:
+					return 4;
+				case CONS:
+					return 5;
+				case ADD:
+				case SUB:
+					return 6;
+				case MULT:
+				case DIV:
+					return 7;
+				default:
+					return 0;
+			}
+		}
+		
+		private ATOM_NODE atom( int ix ) {
+			return new ATOM_NODE( this.store.getLogicDepth( ix ), this.store.getToken( ix ) );
+		}
+		
+		private void operand( PARSE_FRAME frame, SYNTAX_NODE node ) {
+			frame.operands.add( node );
+			// prefixes bind tighter than any binop, so they're done with as soon as there's an operand for them
+			while( frame.operatorCount > 0 && (frame.operators[ frame.operatorCount - 1 ] & PREFIX) != 0 )
+				this.reduce( frame );
+			frame.state = OPERATOR;
+		}
+		
+		private void pushOperator( PARSE_FRAME frame, int operator, int depth ) {
+			if( frame.operatorCount == frame.operators.length ) {
+				frame.operators = Arrays.copyOf( frame.operators, frame.operatorCount * 2 );
+				frame.operatorDepths = Arrays.copyOf( frame.operatorDepths, frame.operatorCount * 2 );
+			}
+			frame.operators[ frame.operatorCount ] = operator;
+			frame.operatorDepths[ frame.operatorCount++ ] = depth;
+		}
+		
+		/**
+		 * Puts the operator on top of the expression's stack together with its operand(s)
+		 */
+		private void reduce( PARSE_FRAME frame ) {
+			int operator = frame.operators[ --frame.operatorCount ];
+			int depth = frame.operatorDepths[ frame.operatorCount ];
+			TOKEN op = TOKEN.ofKind( operator & ~PREFIX );
+			ArrayList<SYNTAX_NODE> operands = frame.operands;
+			SYNTAX_NODE right = operands.remove( operands.size( ) - 1 );
+			
+			if( (operator & PREFIX) != 0 ) {
+				switch( op ) {
+					case READ_REF:
+						operands.add( new DEREF_NODE( depth, right ) );
+						break;
+					case REF:
+						operands.add( new REF_NODE( depth, right ) );
+						break;
+					case HEAD:
+					case TAIL:
+						operands.add( new LIST_OP_NODE( depth, op, right ) );
+						break;
+					default:
+						operands.add( new UNARY_NODE( depth, op, right ) );
+				}
+				return;
+			}
+			
+			SYNTAX_NODE left = operands.remove( operands.size( ) - 1 );
+			switch( op ) {
+				case ASSIGN:
+					operands.add( new ASSIGN_NODE( depth, left, right ) );
+					break;
+				case CONS:
+					operands.add( new CONS_NODE( depth, left, right ) );
+					break;
+				default:
+					operands.add( new BINOP_NODE( depth, op, left, right ) );
+			}
+		}
+		
+		private PARSE_FRAME push( int kind, int state, int depth ) {
+			if( this.top == this.frames.size( ) )
+				this.frames.add( new PARSE_FRAME( ) );
+			PARSE_FRAME frame = this.frames.get( this.top++ );
+			frame.kind = kind;
+			frame.state = state;
+			frame.depth = depth;
+			frame.node = null;
+			frame.lastItem = null;
+			frame.identifier = null;
+			frame.typedef = null;
+			frame.isList = false;
+			frame.isRef = false;
+			frame.operands.clear( );
+			frame.operatorCount = 0;
+			return frame;
+		}
+		
+		/**
+		 * Pops the frame on top, which has finished parsing node, and hands node over to the frame under
+		 * it, which may be finished by it in turn
+		 */
+		private void deliver( SYNTAX_NODE node ) {
+			while( node != null ) {
+				PARSE_FRAME done = this.frames.get( --this.top );
+				done.node = null;
+				done.lastItem = null;
+				done.operands.clear( );
+				node = this.receive( this.frames.get( this.top - 1 ), node );
+			}
+		}
+		
+		/**
+		 * Gives the frame the node parsed for it.
+		 * 
+		 * @return			The frame's own node if that's finished it, otherwise null
+		 */
+		private SYNTAX_NODE receive( PARSE_FRAME frame, SYNTAX_NODE node ) {
+			switch( frame.kind ) {
+				case PROGRAM:
+					// held back until it's settled
+					break;
+				case LET:
+					if( frame.state == AFTER_DECLARATION )
+						((LET_NODE)frame.node).declarations.add( (VAL_NODE)node );
+					else
+						((LET_NODE)frame.node).body.add( node );
+					break;
+				case GROUP:
+					((GROUP_NODE)frame.node).items.add( node );
+					break;
+				case LIST:
+					((LIST_NODE)frame.node).elements.add( node );
+					break;
+				
+				case VAL:
+					return new VAL_NODE( frame.depth, frame.identifier, frame.typedef, frame.isList, frame.isRef, node );
+				case IF: {
+					IF_NODE conditional = (IF_NODE)frame.node;
+					if( frame.state == THEN )
+						conditional.condition = node;
+					else if( frame.state == ELSE )
+						conditional.whenTrue = node;
+					else {
+						conditional.whenFalse = node;
+						return conditional;
+					}
+					return null;
+				}
+				case WHILE:
+					if( frame.state == DO )
+						((WHILE_NODE)frame.node).condition = node;
+					else
+						((WHILE_NODE)frame.node).body = node;
+					return null;
+				
+				default:
+					this.operand( frame, node );
+					return null;
+			}
+			frame.lastItem = node;
+			return null;
+		}
+		
+		/**
+		 * Stops the parse with a syntax error on the token
+		 * 
+		 * @return			true, the token being used up
+		 */
+		private boolean reject( int ix ) {
+			this.syntaxError = new SYNTAX_ERROR( this.store.getLine( ix ), this.store.getOffset( ix ), this.store.getTokenValue( ix ) );
+			return true;
+		}
+	}
+	
+	/**
+	 * Empties the list, letting go of its array if it held more than capacity
+	 */
+	private static <T> void clear( ArrayList<T> list, int capacity ) {
+		boolean grown = list.size( ) > capacity;
+		list.clear( );
+		if( grown )
+			list.trimToSize( );
+	}
+	
+	/**
+	 * Scoped Symbols <br />
+	 * The declarations in scope, each the @LINEAR_IR slot it made, looked up by the identifier's symbol
+	 * id (see @SYMBOL_TABLE). Each
+	 * symbol has a stack of its declarations, the innermost on top, threaded through one array of all
+	 * of them in the order they were made. <br />
+	 * Scopes are numbered by how deeply they're nested, e.g. how many lets deep (see @LINEAR_IR.lower),
+	 * and closing one drops everything declared deeper than what's left open. Declaring, looking up and checking for a clash in
+	 * the same scope (see @IDENTIFIER_DECLARATION_SEMANTIC_CHUNK.conflictsWith) are all constant time.
+	 */
+	public static class SCOPED_SYMBOLS {
+		private static final int SYMBOL = 0;
+		private static final int SLOT = 1;
+		private static final int DEPTH = 2;
+		private static final int SHADOWS = 3;
+		private static final int STRIDE = 4;
+		
+		// by symbol, the innermost of its declarations in scope, or -1
+		private int[] innermost = new int[ 64 ];
+		
+		// every declaration in scope, outermost first: symbol, slot, depth and the declaration it shadows
+		private int[] declarations = new int[ STRIDE * 64 ];
+		private int count = 0;
+		
+		public SCOPED_SYMBOLS( ) {
+			Arrays.fill( this.innermost, -1 );
+		}
+		
+		/**
+		 * Declares the symbol in the scope at depth, shadowing any declaration of it further out.
+		 * 
+		 * @return			Whether it was already declared in the same scope
+		 */
+		public boolean declare( int symbol, int slot, int depth ) {
+			if( symbol >= this.innermost.length ) {
+				int oldLength = this.innermost.length;
+				this.innermost = Arrays.copyOf( this.innermost, Math.max( symbol + 1, oldLength * 2 ) );
+				Arrays.fill( this.innermost, oldLength, this.innermost.length, -1 );
+			}
+			if( (this.count + 1) * STRIDE > this.declarations.length )
+				this.declarations = Arrays.copyOf( this.declarations, this.declarations.length * 2 );
+			
+			int shadows = this.innermost[ symbol ];
+			int at = this.count * STRIDE;
+			this.declarations[ at + SYMBOL ] = symbol;
+			this.declarations[ at + SLOT ] = slot;
+			this.declarations[ at + DEPTH ] = depth;
+			this.declarations[ at + SHADOWS ] = shadows;
+			this.innermost[ symbol ] = this.count++;
+			
+			return shadows >= 0 && this.declarations[ shadows * STRIDE + DEPTH ] == depth;
+		}
+		
+		/**
+		 * The slot of the symbol's innermost declaration in scope, or -1 if it isn't declared
+		 */
+		public int slotOf( int symbol ) {
+			if( symbol >= this.innermost.length || this.innermost[ symbol ] < 0 )
+				return -1;
+			return this.declarations[ this.innermost[ symbol ] * STRIDE + SLOT ];
+		}
+		
+		/**
+		 * Forgets every declaration, letting go of the arrays if they've grown past room for capacity
+		 */
+		public void reset( int capacity ) {
+			this.closeScope( Integer.MIN_VALUE );
+			if( this.innermost.length > capacity ) {
+				this.innermost = new int[ 64 ];
+				Arrays.fill( this.innermost, -1 );
+			}
+			if( this.declarations.length > STRIDE * capacity )
+				this.declarations = new int[ STRIDE * 64 ];
+		}
+		
+		/**
+		 * Forgets every declaration deeper than depth, as a block back out at depth has ended
+		 */
+		public void closeScope( int depth ) {
+			while( this.count > 0 && this.declarations[ (this.count - 1) * STRIDE + DEPTH ] > depth ) {
+				int at = --this.count * STRIDE;
+				this.innermost[ this.declarations[ at + SYMBOL ] ] = this.declarations[ at + SHADOWS ];
+			}
+		}
+	}
+	
+	/**
+	 * Linear IR <br />
+	 * The program as a flat list of instructions, lowered from the @SYNTAX_NODE tree for the C to be
+	 * made from (or anything else that wants to go over it). <br />
+	 * Each instruction is five ints in one array: the op (and its flags), the logic depth, and up to
+	 * three operands. An instruction's index stands for the value it makes, and that's what operands
+	 * refer to, so every instruction comes after those it uses. Identifiers are typed slots (int, real
+	 * or bool, maybe a list and/or ref) taken from their declarations, literals are constants. <br />
+	 * The items of a let, a group or a list are runs of OP_SEQ instructions, one per item, and the
+	 * program's own items are OP_SEQ instructions marked STATEMENT, each after the rest of its item's.
+	 */
+	public static class LINEAR_IR {
+		// constant a
+		public static final int OP_CONST = 0;
+		// slot a
+		public static final int OP_LOAD = 1;
+		// function a (one of the CALL_ constants) of b
+		public static final int OP_CALL = 2;
+		// a (the operator's token kind) b
+		public static final int OP_UNOP = 3;
+		// b a (the operator's token kind) c, :: included
+		public static final int OP_BINOP = 4;
+		// a := b, a being a slot if TARGET_SLOT is set
+		public static final int OP_ASSIGN = 5;
+		// declares slot a as b
+		public static final int OP_DECLARE = 6;
+		// if a then b else c
+		public static final int OP_BRANCH = 7;
+		// while a do b
+		public static final int OP_LOOP = 8;
+		// let, with b declarations then c items in the run of OP_SEQ from a
+		public static final int OP_BLOCK = 9;
+		// ( the b items in the run of OP_SEQ from a )
+		public static final int OP_GROUP = 10;
+		// [ the b elements in the run of OP_SEQ from a ]
+		public static final int OP_LIST = 11;
+		// an item a, of the program if STATEMENT is set, with a ; at the instruction's depth if SEQUENCED is
+		public static final int OP_SEQ = 12;
+		
+		public static final int OP_MASK = 0xFF;
+		
+		// the item is one of the program's own
+		public static final int STATEMENT = 0x100;
+		
+		// the item has a ; after it
+		public static final int SEQUENCED = 0x200;
+		
+		// the declaration is of an identifier already declared in the same scope
+		public static final int REDECLARES = 0x400;
+		
+		// what's assigned to is a slot, not a value
+		public static final int TARGET_SLOT = 0x800;
+		
+		// the constant is a literal consed onto a literal list, folded into one list
+		public static final int FOLDED = 0x1000;
+		
+		public static final int CALL_HEAD = 0;
+		public static final int CALL_TAIL = 1;
+		public static final int CALL_REF = 2;
+		public static final int CALL_READ_REF = 3;
+		
+		public static final int TYPE_INT = 0;
+		public static final int TYPE_REAL = 1;
+		public static final int TYPE_BOOL = 2;
+		public static final int TYPE_MASK = 0x3;
+		
+		public static final int SLOT_LIST = 0x4;
+		public static final int SLOT_REF = 0x8;
+		
+		// the type of a slot for an identifier that's never declared
+		public static final int UNDECLARED = -1;
+		
+		private static final int OP = 0;
+		private static final int DEPTH = 1;
+		private static final int A = 2;
+		private static final int B = 3;
+		private static final int C = 4;
+		private static final int STRIDE = 5;
+		
+		private int[] code = new int[ STRIDE * 256 ];
+		private int size = 0;
+		
+		private I_TOKEN[] constants = new I_TOKEN[ 64 ];
+		private int constantCount = 0;
+		
+		// each slot's identifier (as declared) and type (with SLOT_LIST / SLOT_REF)
+		private ID_TOKEN[] slotNames = new ID_TOKEN[ 64 ];
+		private int[] slotTypes = new int[ 64 ];
+		private int slotCount = 0;
+		
+		// the declarations in scope, as their slots, and how many lets deep the lowering is
+		private final SCOPED_SYMBOLS symbols = new SCOPED_SYMBOLS( );
+		private int scope = 0;
+		
+		// by symbol, the slot for the identifier while it's not declared, or -1
+		private int[] undeclared = new int[ 64 ];
+		
+		// the nodes being lowered, how many of each one's operands are done, and the instructions for those
+		private final ArrayList<SYNTAX_NODE> walk = new ArrayList<SYNTAX_NODE>( );
+		private int[] walkDone = new int[ 64 ];
+		private int[] results = new int[ 64 ];
+		private int resultCount = 0;
+		
+		public LINEAR_IR( ) {
+			Arrays.fill( this.undeclared, -1 );
+		}
+		
+		public int size( ) { return this.size; }
+		public int getOp( int ix ) { return this.code[ ix * STRIDE + OP ] & OP_MASK; }
+		public boolean is( int ix, int flag ) { return (this.code[ ix * STRIDE + OP ] & flag) != 0; }
+		public int getDepth( int ix ) { return this.code[ ix * STRIDE + DEPTH ]; }
+		public int getA( int ix ) { return this.code[ ix * STRIDE + A ]; }
+		public int getB( int ix ) { return this.code[ ix * STRIDE + B ]; }
+		public int getC( int ix ) { return this.code[ ix * STRIDE + C ]; }
+		
+		public I_TOKEN getConstant( int constant ) { return this.constants[ constant ]; }
+		
+		public int getSlotCount( ) { return this.slotCount; }
+		public ID_TOKEN getSlotName( int slot ) { return this.slotNames[ slot ]; }
+		public int getSlotType( int slot ) { return this.slotTypes[ slot ]; }
+		
+		/**
+		 * Lowers the items of the program, in order, after whatever's been lowered already. <br />
+		 * Each item's tree is walked with a stack of our own so no amount of nesting can overflow.
+		 */
+		public LINEAR_IR lower( List<SYNTAX_NODE> items ) {
+			for( SYNTAX_NODE item : items ) {
+				int root = this.lowerNode( item );
+				this.add( OP_SEQ | STATEMENT | (item.isSequenced( ) ? SEQUENCED : 0), item.isSequenced( ) ? item.getSequenceDepth( ) : item.depth, root, 0, 0 );
+			}
+			return this;
+		}
+		
+		/**
+		 * Forgets the instructions and constants so far, once they've been used. The slots are kept, as
+		 * the declarations still in scope and what's lowered after them refer to them.
+		 */
+		public void clear( ) {
+			this.size = 0;
+			Arrays.fill( this.constants, 0, this.constantCount, null );
+			this.constantCount = 0;
+		}
+		
+		/**
+		 * Forgets everything, slots and declarations too, for the next program, letting go of the arrays
+		 * if they've grown past room for capacity instructions
+		 */
+		public void reset( int capacity ) {
+			this.clear( );
+			Arrays.fill( this.slotNames, 0, this.slotCount, null );
+			this.slotCount = 0;
+			this.symbols.reset( capacity );
+			this.scope = 0;
+			Arrays.fill( this.undeclared, -1 );
+			LUTE.clear( this.walk, capacity );
+			if( this.code.length > STRIDE * capacity )
+				this.code = new int[ STRIDE * 256 ];
+			if( this.constants.length > capacity )
+				this.constants = new I_TOKEN[ 64 ];
+			if( this.slotTypes.length > capacity ) {
+				this.slotNames = new ID_TOKEN[ 64 ];
+				this.slotTypes = new int[ 64 ];
+			}
+			if( this.undeclared.length > capacity ) {
+				this.undeclared = new int[ 64 ];
+				Arrays.fill( this.undeclared, -1 );
+			}
+			if( this.results.length > capacity ) {
+				this.walkDone = new int[ 64 ];
+				this.results = new int[ 64 ];
+			}
+		}
+		
+		/**
+		 * The typedef token for a slot type, as written in the source
+		 */
+		public TOKEN getTypedef( int type ) {
+			switch( type & TYPE_MASK ) {
+				case TYPE_REAL:
+					return TOKEN.FLOAT_TYPEDEF;
+				case TYPE_BOOL:
+					return TOKEN.BOOLEAN_TYPEDEF;
+				default:
+					return TOKEN.INTEGER_TYPEDEF;
+			}
+		}
+		
+		/**
+		 * Lowers the node and everything under it, operands first.
+		 * 
+		 * @return			The instruction for the node's value
+		 */
+		private int lowerNode( SYNTAX_NODE root ) {
+			this.visit( root );
+			while( !this.walk.isEmpty( ) ) {
+				int top = this.walk.size( ) - 1;
+				SYNTAX_NODE node = this.walk.get( top );
+				SYNTAX_NODE operand = this.operandOf( node, this.walkDone[ top ]++ );
+				if( operand != null )
+					this.visit( operand );
+				else {
+					this.walk.remove( top );
+					int count = this.walkDone[ top ] - 1;
+					this.resultCount -= count;
+					this.result( this.finish( node, this.resultCount, count ) );
+				}
+			}
+			return this.results[ --this.resultCount ];
+		}
+		
+		/**
+		 * Lowers the node straight away if it has no operands to lower first, otherwise puts it on the walk
+		 */
+		private void visit( SYNTAX_NODE node ) {
+			if( node instanceof ATOM_NODE ) {
+				I_TOKEN token = ((ATOM_NODE)node).token;
+				if( token instanceof ID_TOKEN )
+					this.result( this.add( OP_LOAD, node.depth, this.slotOf( (ID_TOKEN)token ), 0, 0 ) );
+				else
+					this.result( this.add( OP_CONST, node.depth, this.addConstant( token ), 0, 0 ) );
+				return;
+			}
+			
+			// a literal onto a literal list is one list literal
+			I_TOKEN folded = node instanceof CONS_NODE ? LINEAR_IR.fold( (CONS_NODE)node ) : null;
+			if( folded != null ) {
+				this.result( this.add( OP_CONST | FOLDED, ((CONS_NODE)node).head.depth, this.addConstant( folded ), 0, 0 ) );
+				return;
+			}
+			
+			// a let's declarations are in a scope of their own
+			if( node instanceof LET_NODE )
+				this.scope++;
+			
+			int top = this.walk.size( );
+			if( top == this.walkDone.length )
+				this.walkDone = Arrays.copyOf( this.walkDone, top * 2 );
+			this.walk.add( node );
+			this.walkDone[ top ] = 0;
+		}
+		
+		/**
+		 * The node's operand at index, in the order they're lowered, or null if it has no more
+		 */
+		private SYNTAX_NODE operandOf( SYNTAX_NODE node, int index ) {
+			if( node instanceof VAL_NODE )
+				return index == 0 ? ((VAL_NODE)node).value : null;
+			if( node instanceof LET_NODE ) {
+				LET_NODE let = (LET_NODE)node;
+				if( index < let.declarations.size( ) )
+					return let.declarations.get( index );
+				index -= let.declarations.size( );
+				return index < let.body.size( ) ? let.body.get( index ) : null;
+			}
+			if( node instanceof IF_NODE ) {
+				IF_NODE conditional = (IF_NODE)node;
+				return index == 0 ? conditional.condition : index == 1 ? conditional.whenTrue : index == 2 ? conditional.whenFalse : null;
+			}
+			if( node instanceof WHILE_NODE )
+				return index == 0 ? ((WHILE_NODE)node).condition : index == 1 ? ((WHILE_NODE)node).body : null;
+			if( node instanceof GROUP_NODE )
+				return index < ((GROUP_NODE)node).items.size( ) ? ((GROUP_NODE)node).items.get( index ) : null;
+			if( node instanceof LIST_NODE )
+				return index < ((LIST_NODE)node).elements.size( ) ? ((LIST_NODE)node).elements.get( index ) : null;
+			if( node instanceof REF_NODE )
+				return index == 0 ? ((REF_NODE)node).operand : null;
+			if( node instanceof DEREF_NODE )
+				return index == 0 ? ((DEREF_NODE)node).operand : null;
+			if( node instanceof LIST_OP_NODE )
+				return index == 0 ? ((LIST_OP_NODE)node).operand : null;
+			if( node instanceof UNARY_NODE )
+				return index == 0 ? ((UNARY_NODE)node).operand : null;
+			if( node instanceof CONS_NODE )
+				return index == 0 ? ((CONS_NODE)node).head : index == 1 ? ((CONS_NODE)node).tail : null;
+			if( node instanceof BINOP_NODE )
+				return index == 0 ? ((BINOP_NODE)node).left : index == 1 ? ((BINOP_NODE)node).right : null;
+			
+			// an identifier assigned to is a slot, rather than a value to work out first
+			ASSIGN_NODE assign = (ASSIGN_NODE)node;
+			if( assign.target instanceof ATOM_NODE && ((ATOM_NODE)assign.target).isIdentifier( ) )
+				return index == 0 ? assign.value : null;
+			return index == 0 ? assign.target : index == 1 ? assign.value : null;
+		}
+		
+		/**
+		 * Adds the instruction(s) for the node, its operands' being the count results from first
+		 * 
+		 * @return			The instruction for the node's value
+		 */
+		private int finish( SYNTAX_NODE node, int first, int count ) {
+			int depth = node.depth;
+			int a = count > 0 ? this.results[ first ] : 0;
+			int b = count > 1 ? this.results[ first + 1 ] : 0;
+			
+			if( node instanceof VAL_NODE ) {
+				VAL_NODE val = (VAL_NODE)node;
+				int slot = this.addSlot( val.identifier, val.getType( ) );
+				int symbol = val.identifier.getSymbol( );
+				int flags = symbol >= 0 && this.symbols.declare( symbol, slot, this.scope ) ? REDECLARES : 0;
+				return this.add( OP_DECLARE | flags, depth, slot, a, 0 );
+			}
+			if( node instanceof LET_NODE ) {
+				LET_NODE let = (LET_NODE)node;
+				int seqs = this.addSequence( let.declarations, first );
+				this.addSequence( let.body, first + let.declarations.size( ) );
+				
+				// whatever was declared in it goes out of scope with its end
+				this.symbols.closeScope( --this.scope );
+				return this.add( OP_BLOCK, depth, seqs, let.declarations.size( ), let.body.size( ) );
+			}
+			if( node instanceof IF_NODE )
+				return this.add( OP_BRANCH, depth, a, b, this.results[ first + 2 ] );
+			if( node instanceof WHILE_NODE )
+				return this.add( OP_LOOP, depth, a, b, 0 );
+			if( node instanceof GROUP_NODE )
+				return this.add( OP_GROUP, depth, this.addSequence( ((GROUP_NODE)node).items, first ), count, 0 );
+			if( node instanceof LIST_NODE )
+				return this.add( OP_LIST, depth, this.addSequence( ((LIST_NODE)node).elements, first ), count, 0 );
+			if( node instanceof REF_NODE )
+				return this.add( OP_CALL, depth, CALL_REF, a, 0 );
+			if( node instanceof DEREF_NODE )
+				return this.add( OP_CALL, depth, CALL_READ_REF, a, 0 );
+			if( node instanceof LIST_OP_NODE )
+				return this.add( OP_CALL, depth, ((LIST_OP_NODE)node).op == TOKEN.HEAD ? CALL_HEAD : CALL_TAIL, a, 0 );
+			if( node instanceof UNARY_NODE )
+				return this.add( OP_UNOP, depth, ((UNARY_NODE)node).op.getKind( ), a, 0 );
+			if( node instanceof CONS_NODE )
+				return this.add( OP_BINOP, depth, TOKEN.CONS.getKind( ), a, b );
+			if( node instanceof BINOP_NODE )
+				return this.add( OP_BINOP, depth, ((BINOP_NODE)node).op.getKind( ), a, b );
+			
+			ASSIGN_NODE assign = (ASSIGN_NODE)node;
+			if( count == 1 )
+				return this.add( OP_ASSIGN | TARGET_SLOT, depth, this.slotOf( (ID_TOKEN)((ATOM_NODE)assign.target).token ), a, 0 );
+			return this.add( OP_ASSIGN, depth, a, b, 0 );
+		}
+		
+		/**
+		 * Adds an OP_SEQ for each of the items, whose instructions are the results from first on
+		 * 
+		 * @return			The first OP_SEQ
+		 */
+		private int addSequence( List<? extends SYNTAX_NODE> items, int first ) {
+			int seqs = this.size;
+			for( int ix = 0; ix < items.size( ); ++ix ) {
+				SYNTAX_NODE item = items.get( ix );
+				this.add( OP_SEQ | (item.isSequenced( ) ? SEQUENCED : 0), item.isSequenced( ) ? item.getSequenceDepth( ) : item.depth, this.results[ first + ix ], 0, 0 );
+			}
+			return seqs;
+		}
+		
+		/**
+		 * The literal list that's the head literal consed onto the tail one, or null if they're not both literals
+		 */
+		private static I_TOKEN fold( CONS_NODE cons ) {
+			if( !(cons.head instanceof ATOM_NODE) || !(cons.tail instanceof ATOM_NODE) )
+				return null;
+			I_TOKEN head = ((ATOM_NODE)cons.head).token;
+			I_TOKEN tail = ((ATOM_NODE)cons.tail).token;
+			String chars = head.getTokenChars( ) + " :: " + tail.getTokenChars( );
+			
+			if( head instanceof INT_TOKEN && tail instanceof INT_ARRAY_TOKEN ) {
+				int[] rest = ((INT_ARRAY_TOKEN)tail).getValue( );
+				int[] list = new int[ rest == null ? 1 : rest.length + 1 ];
+				list[ 0 ] = ((INT_TOKEN)head).getValue( );
+				if( rest != null )
+					System.arraycopy( rest, 0, list, 1, rest.length );
+				return new INT_ARRAY_TOKEN( list, chars );
+			}
+			if( head instanceof FLOAT_TOKEN && tail instanceof FLOAT_ARRAY_TOKEN ) {
+				float[] rest = ((FLOAT_ARRAY_TOKEN)tail).getValue( );
+				float[] list = new float[ rest == null ? 1 : rest.length + 1 ];
+				list[ 0 ] = ((FLOAT_TOKEN)head).getValue( );
+				if( rest != null )
+					System.arraycopy( rest, 0, list, 1, rest.length );
+				return new FLOAT_ARRAY_TOKEN( list, chars );
+			}
+			return null;
+		}
+		
+		/**
+		 * The slot of the identifier's declaration in scope, or the one it has while it isn't declared
+		 */
+		private int slotOf( ID_TOKEN identifier ) {
+			int symbol = identifier.getSymbol( );
+			if( symbol < 0 )
+				return this.addSlot( identifier, UNDECLARED );
+			
+			int slot = this.symbols.slotOf( symbol );
+			if( slot >= 0 )
+				return slot;
+			if( symbol >= this.undeclared.length ) {
+				int oldLength = this.undeclared.length;
+				this.undeclared = Arrays.copyOf( this.undeclared, Math.max( symbol + 1, oldLength * 2 ) );
+				Arrays.fill( this.undeclared, oldLength, this.undeclared.length, -1 );
+			}
+			if( this.undeclared[ symbol ] < 0 )
+				this.undeclared[ symbol ] = this.addSlot( identifier, UNDECLARED );
+			return this.undeclared[ symbol ];
+		}
+		
+		private void result( int instruction ) {
+			if( this.resultCount == this.results.length )
+				this.results = Arrays.copyOf( this.results, this.resultCount * 2 );
+			this.results[ this.resultCount++ ] = instruction;
+		}
+		
+		private int add( int op, int depth, int a, int b, int c ) {
+			if( (this.size + 1) * STRIDE > this.code.length )
+				this.code = Arrays.copyOf( this.code, this.code.length * 2 );
+			int at = this.size * STRIDE;
+			this.code[ at + OP ] = op;
+			this.code[ at + DEPTH ] = depth;
+			this.code[ at + A ] = a;
+			this.code[ at + B ] = b;
+			this.code[ at + C ] = c;
+			return this.size++;
+		}
+		
+		private int addConstant( I_TOKEN token ) {
+			if( this.constantCount == this.constants.length )
+				this.constants = Arrays.copyOf( this.constants, this.constantCount * 2 );
+			this.constants[ this.constantCount ] = token;
+			return this.constantCount++;
+		}
+		
+		private int addSlot( ID_TOKEN identifier, int type ) {
+			if( this.slotCount == this.slotTypes.length ) {
+				this.slotNames = Arrays.copyOf( this.slotNames, this.slotCount * 2 );
+				this.slotTypes = Arrays.copyOf( this.slotTypes, this.slotCount * 2 );
+			}
+			this.slotNames[ this.slotCount ] = identifier;
+			this.slotTypes[ this.slotCount ] = type;
+			return this.slotCount++;
+		}
+	}
+	
+	/**
+	 * Writes the C code for the program's items lowered to the instructions from up to to, in order.
+	 * If ending they're the last of it, and the very last is closed off as a statement even without a ;
+	 * after it. <br />
+	 * Each instruction is written as the bits of C it's made of, in the order they go, its operands in
+	 * between. The instructions are walked with a stack of their own (see @C_WALK) so no amount of
+	 * nesting can overflow.
+	 */
+	public static void emitCCode( C_EMITTER out, LINEAR_IR ir, int from, int to, boolean ending ) throws IOException {
+		C_WALK walk = new C_WALK( ir );
+		for( int ix = from; ix < to; ++ix ) {
+			if( ir.getOp( ix ) != LINEAR_IR.OP_SEQ || !ir.is( ix, LINEAR_IR.STATEMENT ) )
+				continue;
+			boolean closing = ending && ix == to - 1 && !ir.is( ix, LINEAR_IR.SEQUENCED );
+			walk.pushItem( ix );
+			while( !walk.isEmpty( ) ) {
+				switch( walk.pop( ) ) {
+					case C_WALK.TEXT:
+						LUTE.writeCCode( out, walk.text, walk.depth, closing && walk.isEmpty( ) );
+						break;
+					case C_WALK.SEQUENCE:
+						// Cheaty hack to resolve some issues with ; and }
+						if( !out.endsNear( ';' ) ) {
+							if( out.endsNear( '\n' ) )
+								out.indent( walk.depth );
+							out.append( TOKEN.SEQUENCE.toCCode( ) );
+						}
+						break;
+					case C_WALK.END:
+						if( !out.endsNear( ';' ) )
+							out.append( ";" );
+						out.append( "\n" );
+						out.indent( walk.depth );
+						out.append( TOKEN.END.toCCode( ) );
+						out.append( "\n" );
+						break;
+					default:
+						walk.expand( walk.instruction, walk.kind == C_WALK.CALL_NODE );
+				}
+			}
+			if( closing && !out.endsNear( ';' ) )
+				out.append( ";" );
+		}
+	}
+	
+	/**
+	 * Writes a bit of C, on a new line at the depth if the last bit ended one, with a space after it
+	 * unless it's the last of the program
+	 */
+	private static void writeCCode( C_EMITTER out, String asC, int depth, boolean last ) throws IOException {
+		if( asC.isEmpty( ) )
+			return;
+		// tab if newline 
+		if( out.endsNear( '\n' ) )
+			out.indent( depth );
+		out.append( asC );
+		if( !last && asC.indexOf( '\n' ) < 0 )
+			out.append( " " );
+	}
+	
+	/**
+	 * C Walk <br />
+	 * The stack @emitCCode walks the instructions with: those still to be written, and the bits of C
+	 * that go in between them, the next to go on top. <br />
+	 * A few shapes come out as the semantic chunk the old parser made of them, e.g. x = hd(l) as
+	 * x == hd(l) rather than x == hd ( l ).
+	 */
+	private static class C_WALK {
+		// an instruction, or one whose leftmost hd or tl is written like a call
+		static final int NODE = 0;
+		static final int CALL_NODE = 1;
+		
+		// some C, a ; after an item, or the end of a let or while
+		static final int TEXT = 2;
+		static final int SEQUENCE = 3;
+		static final int END = 4;
+		
+		private final LINEAR_IR ir;
+		
+		private int[] kinds = new int[ 64 ];
+		private int[] instructions = new int[ 64 ];
+		private String[] texts = new String[ 64 ];
+		private int[] depths = new int[ 64 ];
+		private int size = 0;
+		
+		// what was popped last
+		int kind;
+		int instruction;
+		String text;
+		int depth;
+		
+		C_WALK( LINEAR_IR ir ) {
+			this.ir = ir;
+		}
+		
+		boolean isEmpty( ) {
+			return this.size == 0;
+		}
+		
+		int pop( ) {
+			int top = --this.size;
+			this.kind = this.kinds[ top ];
+			this.instruction = this.instructions[ top ];
+			this.text = this.texts[ top ];
+			this.depth = this.depths[ top ];
+			this.texts[ top ] = null;
+			return this.kind;
+		}
+		
+		void push( int kind, int instruction, String text, int depth ) {
+			int top = this.size++;
+			if( top == this.kinds.length ) {
+				this.kinds = Arrays.copyOf( this.kinds, top * 2 );
+				this.instructions = Arrays.copyOf( this.instructions, top * 2 );
+				this.texts = Arrays.copyOf( this.texts, top * 2 );
+				this.depths = Arrays.copyOf( this.depths, top * 2 );
+			}
+			this.kinds[ top ] = kind;
+			this.instructions[ top ] = instruction;
+			this.texts[ top ] = text;
+			this.depths[ top ] = depth;
+		}
+		
+		void pushNode( int kind, int instruction ) {
+			this.push( kind, instruction, null, this.ir.getDepth( instruction ) );
+		}
+		
+		/**
+		 * Pushes the item of the OP_SEQ, and the ; after it if there is one
+		 */
+		void pushItem( int seq ) {
+			if( this.ir.is( seq, LINEAR_IR.SEQUENCED ) )
+				this.push( SEQUENCE, seq, null, this.ir.getDepth( seq ) );
+			this.pushNode( NODE, this.ir.getA( seq ) );
+		}
+		
+		void pushItems( int first, int count ) {
+			for( int seq = first + count - 1; seq >= first; --seq )
+				this.pushItem( seq );
+		}
+		
+		void pushText( String asC, int depth ) {
+			this.push( TEXT, -1, asC, depth );
+		}
+		
+		/**
+		 * Puts what the instruction is written as on the stack, last first
+		 */
+		void expand( int ix, boolean call ) {
+			LINEAR_IR ir = this.ir;
+			int depth = ir.getDepth( ix );
+			int a = ir.getA( ix );
+			int b = ir.getB( ix );
+			int c = ir.getC( ix );
+			switch( ir.getOp( ix ) ) {
+				case LINEAR_IR.OP_CONST:
+				case LINEAR_IR.OP_LOAD:
+					this.pushText( this.atomCCode( ix ), depth );
+					break;
+				
+				case LINEAR_IR.OP_DECLARE: {
+					int type = ir.getSlotType( a );
+					this.pushNode( NODE, b );
+					this.pushText( new IDENTIFIER_DECLARATION_SEMANTIC_CHUNK( depth, ir.getSlotName( a ), ir.getTypedef( type ), (type & LINEAR_IR.SLOT_REF) != 0, (type & LINEAR_IR.SLOT_LIST) != 0 ).toCCode( ), depth );
+					break;
+				}
+				
+				case LINEAR_IR.OP_BLOCK:
+					this.push( END, ix, null, depth );
+					this.pushItems( a + b, c );
+					this.pushText( TOKEN.IN.toCCode( ), depth );
+					this.pushItems( a, b );
+					this.pushText( TOKEN.LET.toCCode( ), depth );
+					break;
+				
+				case LINEAR_IR.OP_BRANCH:
+					this.pushNode( NODE, c );
+					this.pushText( TOKEN.ELSE.toCCode( ), depth );
+					this.pushNode( NODE, b );
+					this.pushText( TOKEN.THEN.toCCode( ), depth );
+					// if a then b else c is all on the if's line
+					if( this.isScalar( a ) && this.isScalar( b ) && this.startsScalar( c ) )
+						this.pushText( this.atomCCode( a ), depth );
+					else
+						this.pushNode( NODE, a );
+					break;
+				
+				case LINEAR_IR.OP_LOOP:
+					this.push( END, ix, null, depth );
+					this.pushNode( NODE, b );
+					this.pushText( TOKEN.DO.toCCode( ), depth );
+					this.pushNode( NODE, a );
+					this.pushText( TOKEN.WHILE.toCCode( ), depth );
+					break;
+				
+				case LINEAR_IR.OP_GROUP:
+					this.pushText( TOKEN.RIGHT_PAREN.toCCode( ), depth );
+					this.pushItems( a, b );
+					this.pushText( TOKEN.LEFT_PAREN.toCCode( ), depth );
+					break;
+				
+				case LINEAR_IR.OP_LIST:
+					this.pushText( TOKEN.RIGHT_BRACKET.toCCode( ), depth );
+					for( int seq = a + b - 1; seq >= a; --seq ) {
+						this.pushNode( NODE, ir.getA( seq ) );
+						if( seq > a )
+							this.pushText( TOKEN.COMMA.toCCode( ), depth );
+					}
+					this.pushText( TOKEN.LEFT_BRACKET.toCCode( ), depth );
+					break;
+				
+				case LINEAR_IR.OP_CALL:
+					if( a == LINEAR_IR.CALL_REF || a == LINEAR_IR.CALL_READ_REF )
+						this.pushNode( NODE, b );
+					else {
+						TOKEN op = a == LINEAR_IR.CALL_HEAD ? TOKEN.HEAD : TOKEN.TAIL;
+						if( call )
+							this.pushText( op.getTokenChars( ) + "(" + this.calledOn( ix ).getTokenChars( ) + ")", depth );
+						else {
+							this.pushNode( NODE, b );
+							this.pushText( op.toCCode( ), depth );
+						}
+					}
+					break;
+				
+				case LINEAR_IR.OP_UNOP:
+					this.pushNode( NODE, b );
+					this.pushText( TOKEN.ofKind( a ).toCCode( ), depth );
+					break;
+				
+				case LINEAR_IR.OP_ASSIGN:
+					this.pushNode( NODE, b );
+					this.pushText( TOKEN.ASSIGN.toCCode( ), depth );
+					if( ir.is( ix, LINEAR_IR.TARGET_SLOT ) )
+						this.pushText( ir.getSlotName( a ).toCCode( ), depth );
+					else
+						this.pushNode( call ? CALL_NODE : NODE, a );
+					break;
+				
+				default:
+					if( a == TOKEN.CONS.getKind( ) )
+						this.expandCons( ix, call );
+					else {
+						// x = hd(l), comparing with the head or tail of a list
+						boolean compared = a == TOKEN.EQUALS.getKind( ) && ir.getOp( this.rightmost( b ) ) == LINEAR_IR.OP_LOAD && this.calledOn( this.leftmost( c ) ) != null;
+						this.pushNode( compared ? CALL_NODE : NODE, c );
+						// = is a comparison in SML, an assignment in C
+						this.pushText( a == TOKEN.EQUALS.getKind( ) ? "==" : TOKEN.ofKind( a ).toCCode( ), depth );
+						this.pushNode( call ? CALL_NODE : NODE, b );
+					}
+			}
+		}
+		
+		private void expandCons( int ix, boolean call ) {
+			LINEAR_IR ir = this.ir;
+			int head = ir.getB( ix );
+			int tail = ir.getC( ix );
+			
+			// x :: [ !y ], a list of an identifier onto one of another
+			int identifier = this.identifier( ir.getOp( head ) == LINEAR_IR.OP_CALL && ir.getA( head ) == LINEAR_IR.CALL_READ_REF ? ir.getB( head ) : head );
+			if( identifier >= 0 && ir.getOp( tail ) == LINEAR_IR.OP_LIST && ir.getB( tail ) == 1 ) {
+				int element = ir.getA( ir.getA( tail ) );
+				int last = ir.getOp( element ) == LINEAR_IR.OP_CALL && ir.getA( element ) == LINEAR_IR.CALL_READ_REF ? this.identifier( ir.getB( element ) ) : -1;
+				if( last >= 0 ) {
+					int slot = ir.getA( identifier );
+					ID_LIST_CON_SEMANTIC_CHUNK ilcsc = new ID_LIST_CON_SEMANTIC_CHUNK( ir.getSlotName( slot ), ir.getSlotName( ir.getA( last ) ) );
+					// Stupid hack for stupid things
+					// the list is of reals if the identifier's slot is
+					if( ir.getSlotType( slot ) != LINEAR_IR.UNDECLARED && (ir.getSlotType( slot ) & LINEAR_IR.TYPE_MASK) == LINEAR_IR.TYPE_REAL )
+						ilcsc.setAsFloat( );
+					this.pushText( ilcsc.toCCode( ), ir.getDepth( identifier ) );
+					return;
+				}
+			}
+			
+			this.pushNode( NODE, tail );
+			this.pushText( TOKEN.CONS.toCCode( ), ir.getDepth( ix ) );
+			this.pushNode( call ? CALL_NODE : NODE, head );
+		}
+		
+		private String atomCCode( int ix ) {
+			if( this.ir.getOp( ix ) == LINEAR_IR.OP_LOAD )
+				return this.ir.getSlotName( this.ir.getA( ix ) ).toCCode( );
+			return this.ir.getConstant( this.ir.getA( ix ) ).toCCode( );
+		}
+		
+		/**
+		 * The instruction, if it loads an identifier, otherwise -1
+		 */
+		private int identifier( int ix ) {
+			return this.ir.getOp( ix ) == LINEAR_IR.OP_LOAD ? ix : -1;
+		}
+		
+		/**
+		 * Whether it's an identifier or a single int, real or bool, i.e. not a list or unit
+		 */
+		private boolean isScalar( int ix ) {
+			if( this.ir.getOp( ix ) == LINEAR_IR.OP_LOAD )
+				return true;
+			if( this.ir.getOp( ix ) != LINEAR_IR.OP_CONST )
+				return false;
+			int kind = this.ir.getConstant( this.ir.getA( ix ) ).getKind( );
+			return kind == KIND_INT || kind == KIND_FLOAT || kind == KIND_BOOL;
+		}
+		
+		/**
+		 * Whether its C starts with a scalar: an identifier assigned to, or a literal consed onto a list
+		 * literal, do too
+		 */
+		private boolean startsScalar( int ix ) {
+			int start = this.leftmost( ix );
+			return this.ir.getOp( start ) == LINEAR_IR.OP_ASSIGN || this.ir.is( start, LINEAR_IR.FOLDED ) || this.isScalar( start );
+		}
+		
+		/**
+		 * The instruction whose C the instruction's C starts with, going down through the left operands
+		 */
+		private int leftmost( int ix ) {
+			while( true ) {
+				switch( this.ir.getOp( ix ) ) {
+					case LINEAR_IR.OP_BINOP:
+						ix = this.ir.getB( ix );
+						break;
+					case LINEAR_IR.OP_ASSIGN:
+						if( this.ir.is( ix, LINEAR_IR.TARGET_SLOT ) )
+							return ix;
+						ix = this.ir.getA( ix );
+						break;
+					default:
+						return ix;
+				}
+			}
+		}
+		
+		/**
+		 * The instruction whose C the instruction's C ends with, going down through the right operands
+		 */
+		private int rightmost( int ix ) {
+			while( true ) {
+				switch( this.ir.getOp( ix ) ) {
+					case LINEAR_IR.OP_BINOP:
+					case LINEAR_IR.OP_BRANCH:
+						ix = this.ir.getC( ix );
+						break;
+					case LINEAR_IR.OP_CALL:
+					case LINEAR_IR.OP_UNOP:
+					case LINEAR_IR.OP_ASSIGN:
+					case LINEAR_IR.OP_DECLARE:
+						ix = this.ir.getB( ix );
+						break;
+					default:
+						return ix;
+				}
+			}
+		}
+		
+		/**
+		 * The identifier the instruction is hd or tl of, if it's hd ( x ) or hd ( !x ), otherwise null
+		 */
+		private ID_TOKEN calledOn( int ix ) {
+			LINEAR_IR ir = this.ir;
+			if( ir.getOp( ix ) != LINEAR_IR.OP_CALL || (ir.getA( ix ) != LINEAR_IR.CALL_HEAD && ir.getA( ix ) != LINEAR_IR.CALL_TAIL) )
+				return null;
+			int group = ir.getB( ix );
+			if( ir.getOp( group ) != LINEAR_IR.OP_GROUP || ir.getB( group ) != 1 || ir.is( ir.getA( group ), LINEAR_IR.SEQUENCED ) )
+				return null;
+			int item = ir.getA( ir.getA( group ) );
+			int list = this.identifier( ir.getOp( item ) == LINEAR_IR.OP_CALL && ir.getA( item ) == LINEAR_IR.CALL_READ_REF ? ir.getB( item ) : item );
+			return list >= 0 ? ir.getSlotName( ir.getA( list ) ) : null;
+		}
+	}
+	
+	/**
+	 * C Emitter <br />
+	 * Writes C code out as it's made, through a small buffer of its own, rather than building up the
+	 * whole program in memory first. <br />
+	 * It keeps the last two characters written, as that's all the third pass ever looks back at, and
+	 * the indentation for each depth is only built the once.
+	 */
+	public static class C_EMITTER {
+		// four spaces a level, built up to this many levels at a time
+		private static final int INDENT_LEVELS = 16;
+		
+		private final Writer writer;
+		private final char[] buffer;
+		private int size = 0;
+		
+		private char last = 0;
+		private char beforeLast = 0;
+		
+		private final String[] indents = new String[ INDENT_LEVELS + 1 ];
+		
+		public C_EMITTER( Writer writer ) {
+			this( writer, 8192 );
+		}
+		
+		public C_EMITTER( WritableByteChannel channel ) {
+			this( Channels.newWriter( channel, Charset.defaultCharset( ).newEncoder( ), -1 ) );
+		}
+		
+		public C_EMITTER( Writer writer, int bufferSize ) {
+			this.writer = writer;
+			this.buffer = new char[ bufferSize ];
+			
+			char[] spaces = new char[ INDENT_LEVELS * 4 ];
+			Arrays.fill( spaces, ' ' );
+			for( int levels = 0; levels <= INDENT_LEVELS; ++levels )
+				this.indents[ levels ] = new String( spaces, 0, levels * 4 );
+		}
+		
+		public C_EMITTER append( String s ) throws IOException {
+			int length = s.length( );
+			if( length == 0 )
+				return this;
+			
+			if( length > this.buffer.length - this.size ) {
+				this.flushBuffer( );
+				if( length > this.buffer.length )
+					this.writer.write( s );
+			}
+			if( length <= this.buffer.length ) {
+				s.getChars( 0, length, this.buffer, this.size );
+				this.size += length;
+			}
+			
+			this.beforeLast = length > 1 ? s.charAt( length - 2 ) : this.last;
+			this.last = s.charAt( length - 1 );
+			return this;
+		}
+		
+		/**
+		 * Indents a line at the logic depth, one level more than the depth itself (none if it's below zero)
+		 */
+		public C_EMITTER indent( int depth ) throws IOException {
+			for( int levels = depth + 1; levels > 0; levels -= INDENT_LEVELS )
+				this.append( this.indents[ Math.min( levels, INDENT_LEVELS ) ] );
+			return this;
+		}
+		
+		/**
+		 * Returns true if c is either of the last two characters written
+		 */
+		public boolean endsNear( char c ) {
+			return this.last == c || this.beforeLast == c;
+		}
+		
+		/**
+		 * Drops anything buffered and forgets what was written, to start on another output through the
+		 * same writer
+		 */
+		public void reset( ) {
+			this.size = 0;
+			this.after( "" );
+		}
+		
+		/**
+		 * The last two characters written (fewer at the very start)
+		 */
+		public String getTail( ) {
+			if( this.last == 0 )
+				return "";
+			return this.beforeLast == 0 ? String.valueOf( this.last ) : new String( new char[] { this.beforeLast, this.last } );
+		}
+		
+		/**
+		 * Carries on as if tail had just been written, without writing it, e.g. for a piece of the C
+		 * written on its own to go after it
+		 */
+		public C_EMITTER after( String tail ) {
+			this.beforeLast = tail.length( ) > 1 ? tail.charAt( tail.length( ) - 2 ) : 0;
+			this.last = tail.length( ) > 0 ? tail.charAt( tail.length( ) - 1 ) : 0;
+			return this;
+		}
+		
+		/**
+		 * Whether the third pass would carry on the same after tail as after what's been written, i.e. if
+		 * endsNear( ) agrees for the only characters it's asked about, \n and ;
+		 */
+		public boolean endsLike( String tail ) {
+			char beforeLast = tail.length( ) > 1 ? tail.charAt( tail.length( ) - 2 ) : 0;
+			char last = tail.length( ) > 0 ? tail.charAt( tail.length( ) - 1 ) : 0;
+			return this.tailClass( this.beforeLast ) == this.tailClass( beforeLast ) && this.tailClass( this.last ) == this.tailClass( last );
 		}
-
-		@Override
-		public String getType() {
-			// TODO Auto-generated method stub
-			return null;
+		
+		private int tailClass( char c ) {
+			return c == '\n' ? 1 : c == ';' ? 2 : 0;
 		}
-
-		@Override
-		public String toCCode() {
-			// TODO Auto-generated method stub
-			return left.getTokenChars( ) + " == " + listOp.getTokenChars( ) + "(" + list.getTokenChars( ) + ")";
+		
+		/**
+		 * Writes out anything buffered, all the way through the writer
+		 */
+		public void flush( ) throws IOException {
+			this.flushBuffer( );
+			this.writer.flush( );
 		}
 		
+		private void flushBuffer( ) throws IOException {
+			if( this.size > 0 ) {
+				this.writer.write( this.buffer, 0, this.size );
+				this.size = 0;
+				this.writer.flush( );
+			}
+		}
 	}
 	
-	public class LIST_CON_SEMANTIC_CHUNK implements MULTI_TOKEN_SEMANTIC_CHUNK {
-
-		private I_VALUE_TOKEN val;
-		private INT_ARRAY_TOKEN intArray = null;
-		private FLOAT_ARRAY_TOKEN floatArray = null;
+	/**
+	 * Token Pipeline <br />
+	 * The fused passes (see @testFused) split over three threads: one lexes, one checks the tokens and
+	 * the calling thread parses them and writes out the C. They hand tokens on in batches, through
+	 * bounded queues that a stage waits on when it gets too far ahead of the next. <br />
+	 * Each stage keeps its own (small) window of the tokens, so nothing is shared but the batches. A
+	 * syntax error is passed along to the end to be printed, and stops the stages before it; an exception
+	 * in any stage stops all of them and is thrown from run( ).
+	 */
+	public static class TOKEN_PIPELINE {
+		private static final int BATCH_TOKENS = 1024;
+		private static final int QUEUED_BATCHES = 16;
 		
-		public LIST_CON_SEMANTIC_CHUNK( I_VALUE_TOKEN val, INT_ARRAY_TOKEN array ) {
-			this.val = val;
-			this.intArray = array;
+		private final COMPILATION_CONTEXT context;
+		
+		private final SPSC_QUEUE<TOKEN_BATCH> lexed = new SPSC_QUEUE<TOKEN_BATCH>( QUEUED_BATCHES );
+		private final SPSC_QUEUE<TOKEN_BATCH> checked = new SPSC_QUEUE<TOKEN_BATCH>( QUEUED_BATCHES );
+		
+		// the batch of checked tokens the second stage is filling
+		private TOKEN_BATCH outgoing = new TOKEN_BATCH( BATCH_TOKENS );
+		
+		// set to stop every stage, once one has failed
+		private volatile boolean cancelled = false;
+		private volatile Throwable failure = null;
+		
+		// set to stop just the lexer, once the validator has found an error and needs no more tokens
+		private volatile boolean lexingStopped = false;
+		
+		// set as each of the first two stages returns, whether or not its last batch got handed on
+		private volatile boolean lexerDone = false;
+		private volatile boolean validatorDone = false;
+		
+		public TOKEN_PIPELINE( COMPILATION_CONTEXT context ) {
+			this.context = context;
 		}
 		
-		public LIST_CON_SEMANTIC_CHUNK( I_VALUE_TOKEN val, FLOAT_ARRAY_TOKEN array ) {
-			this.val = val;
-			this.floatArray = array;
+		public void run( ) throws IOException {
+			Thread lexer = this.start( "lute-lexer", new Runnable( ) {
+				public void run( ) {
+					try {
+						TOKEN_PIPELINE.this.lex( );
+					}
+					finally {
+						TOKEN_PIPELINE.this.lexerDone = true;
+					}
+				}
+			} );
+			Thread validator = this.start( "lute-validator", new Runnable( ) {
+				public void run( ) {
+					try {
+						TOKEN_PIPELINE.this.validate( );
+					}
+					finally {
+						TOKEN_PIPELINE.this.validatorDone = true;
+					}
+				}
+			} );
+			
+			try {
+				this.emit( );
+			}
+			catch( Throwable t ) {
+				this.fail( t );
+			}
+			
+			try {
+				lexer.join( );
+				validator.join( );
+			}
+			catch( InterruptedException ie ) {
+				this.cancelled = true;
+				Thread.currentThread( ).interrupt( );
+			}
+			
+			Throwable t = this.failure;
+			if( t instanceof IOException )
+				throw (IOException)t;
+			else if( t instanceof RuntimeException )
+				throw (RuntimeException)t;
+			else if( t instanceof Error )
+				throw (Error)t;
+			else if( t != null )
+				throw new IllegalStateException( t );
+		}
+		
+		private Thread start( String name, final Runnable stage ) {
+			Thread thread = new Thread( new Runnable( ) {
+				public void run( ) {
+					try {
+						stage.run( );
+					}
+					catch( Throwable t ) {
+						TOKEN_PIPELINE.this.fail( t );
+					}
+				}
+			}, name );
+			thread.setDaemon( true );
+			thread.start( );
+			return thread;
 		}
 		
-		@Override
-		public I_VALUE_TOKEN toToken() {
-			// TODO Auto-generated method stub
-			return null;
+		private void fail( Throwable t ) {
+			if( this.failure == null )
+				this.failure = t;
+			this.cancelled = true;
 		}
-
-		@Override
-		public String getType() {
-			// TODO Auto-generated method stub
-			return null;
+		
+		/**
+		 * First stage: reads the tokens out of the source
+		 */
+		private void lex( ) {
+			TOKEN_STREAM tokens = new TOKEN_STREAM( this.context.source, this.context.literals );
+			TOKEN_BATCH batch = new TOKEN_BATCH( BATCH_TOKENS );
+			boolean errorKnown = false;
+			while( tokens.hasNext( ) ) {
+				I_TOKEN token = tokens.next( );
+				batch.add( token, token.getKind( ), tokens.getLine( ), tokens.getOffset( ), tokens.getLength( ), 0, tokens.getTokenNum( ), tokens.getTokenStart( ) );
+				
+				// the lexer reads ahead, so it can find an error before it's handed out the tokens before it
+				if( !errorKnown && tokens.getSyntaxError( ) != null ) {
+					batch.setSyntaxError( tokens.getSyntaxError( ), batch.count - 1 );
+					errorKnown = true;
+				}
+				if( batch.isFull( ) ) {
+					if( !this.put( this.lexed, batch ) )
+						return;
+					batch = new TOKEN_BATCH( BATCH_TOKENS );
+				}
+			}
+			batch.finish( tokens.getSyntaxError( ) );
+			this.put( this.lexed, batch );
 		}
 		
-		@Override
-		public String toCCode( ) {
-			if( this.intArray != null ) {
-				int[] vals = this.intArray.value;
-				if( vals == null )
-					return "new list<int>(" + this.val.getTokenChars() + ",0)";
-				else {
-					StringBuilder sb = new StringBuilder( );
-					sb.append( "new list<int>(" + this.val.getTokenChars() + ",");
-					for( int ix = 0; ix < vals.length; ++ix ) {
-						sb.append( "new list<int>(" + vals[ix] + "," );
+		/**
+		 * Second stage: checks each token, passing it on once its kind and logic depth are final
+		 */
+		private void validate( ) {
+			TOKEN_BUFFER store = new TOKEN_BUFFER( );
+			store.reset( this.context.source );
+			FLOW_VALIDATOR validator = new FLOW_VALIDATOR( store );
+			
+			// the tokens before next have been passed on
+			int next = 0;
+			
+			// the lexer's syntax error, once it has found one
+			SYNTAX_ERROR lexError = null;
+			
+			TOKEN_BATCH in;
+			while( (in = this.take( this.lexed )) != null ) {
+				for( int i = 0; i < in.count; ++i ) {
+					if( in.syntaxError != null && i >= in.errorAt )
+						lexError = in.syntaxError;
+					
+					int ix = this.context.addToken( store, in.tokens[ i ], in.offsets[ i ], in.lengths[ i ], in.nums[ i ], in.lines[ i ], in.starts[ i ] );
+					if( !validator.accept( ix, in.kinds[ i ], in.lines[ i ] ) ) {
+						// nothing more is needed from the lexer, but the error still has to get to the end
+						// if it already knew of an error by this token, that's the one reported, same as testFused
+						this.lexingStopped = true;
+						this.outgoing.finish( lexError != null ? lexError : validator.getSyntaxError( ) );
+						this.put( this.checked, this.outgoing );
+						return;
 					}
-					sb.append( "0)" );
-					for( int ix = 0; ix < vals.length; ++ix )
-						sb.append( ")" );
-					return sb.toString( );
+					
+					for( ; next < validator.getChecked( ); ++next ) {
+						if( !this.passOn( store, next ) )
+							return;
+					}
+					// the validator can still blame the token before the next one it checks
+					store.discard( validator.getChecked( ) - 1 );
 				}
-			}
-			else if( this.floatArray != null ) {
-				float[] vals = this.floatArray.value;
-				if( vals == null )
-					return "new list<float>(" + this.val.getTokenChars() + ",0)";
-				else {
-					StringBuilder sb = new StringBuilder( );
-					sb.append( "new list<float>(" + this.val.getTokenChars() + ",");
-					for( int ix = 0; ix < vals.length; ++ix ) {
-						sb.append( "new list<float>(" + vals[ix] + "," );
+				
+				if( in.last ) {
+					SYNTAX_ERROR syntaxError = in.syntaxError;
+					if( syntaxError == null && !validator.finish( ) )
+						syntaxError = validator.getSyntaxError( );
+					
+					if( syntaxError == null ) {
+						for( ; next < store.size( ); ++next ) {
+							if( !this.passOn( store, next ) )
+								return;
+						}
 					}
-					sb.append( "0)" );
-					for( int ix = 0; ix < vals.length; ++ix )
-						sb.append( ")" );
-					return sb.toString( );
+					this.outgoing.finish( syntaxError );
+					this.put( this.checked, this.outgoing );
+					return;
 				}
 			}
-			return "";
 		}
-
-	}
-	
-	// Stupid and hacky because LUTE has no idea what an array using identifiers is
-	// This is basically specifically for the last test, so feel free to call it
-	// hard-coded
-	// Wanted to make it able accept [ !x, !y, !z ] but regex was being a dumb
-	public class ID_LIST_CON_SEMANTIC_CHUNK implements MULTI_TOKEN_SEMANTIC_CHUNK {
-		private ID_TOKEN val;
-		private boolean isFloat = false;
-		private I_TOKEN token;
 		
-		public ID_LIST_CON_SEMANTIC_CHUNK( ID_TOKEN val, I_TOKEN token ) {
-			this.val = val;
-			this.token = token;
+		/**
+		 * Adds a checked token to the batch going to the last stage, handing it on when full. Returns
+		 * false if the pipeline has been stopped.
+		 */
+		private boolean passOn( TOKEN_BUFFER store, int ix ) {
+			this.outgoing.add( store.getToken( ix ), store.getKind( ix ), store.getLine( ix ), store.getOffset( ix ), store.getLength( ix ), store.getLogicDepth( ix ), 0, 0 );
+			if( this.outgoing.isFull( ) ) {
+				if( !this.put( this.checked, this.outgoing ) )
+					return false;
+				this.outgoing = new TOKEN_BATCH( BATCH_TOKENS );
+			}
+			return true;
 		}
 		
-		public void setAsFloat( ) {
-			this.isFloat = true;
+		/**
+		 * Last stage: parses the tokens, writing out the C for each item of the program as it's finished
+		 */
+		private void emit( ) throws IOException {
+			TOKEN_BUFFER store = new TOKEN_BUFFER( );
+			store.reset( this.context.source );
+			SYNTAX_PARSER parser = new SYNTAX_PARSER( store );
+			LINEAR_IR ir = new LINEAR_IR( );
+			
+			// debug output has the tokens first, so the C is held back until the end
+			StringWriter held = this.context.outputMode == 2 ? new StringWriter( ) : null;
+			C_EMITTER out = new C_EMITTER( held != null ? held : new OutputStreamWriter( this.context.out ) );
+			
+			boolean started = false;
+			SYNTAX_ERROR syntaxError = null;
+			
+			TOKEN_BATCH in;
+			while( (in = this.take( this.checked )) != null ) {
+				// after a syntax error in the parse the rest of the tokens are still read and checked, as
+				// with testFused, but go no further
+				if( syntaxError == null ) {
+					int from = store.size( );
+					for( int i = 0; i < in.count; ++i ) {
+						int ix = store.add( in.tokens[ i ], in.lines[ i ], in.offsets[ i ], in.lengths[ i ] );
+						store.setLogicDepth( ix, in.depths[ i ] );
+					}
+					
+					// the program ends after the last token, unless it's cut short by an error
+					boolean parsed = parser.parse( from, store.size( ) ) && (!in.last || in.syntaxError != null || parser.finish( ));
+					started = LUTE.emitParsed( out, parser, ir, started, in.last && parsed && in.syntaxError == null );
+					syntaxError = parser.getSyntaxError( );
+					
+					// the parser can still blame the last token it was handed
+					store.discard( store.size( ) - 1 );
+				}
+				
+				if( in.last ) {
+					if( syntaxError == null )
+						syntaxError = in.syntaxError;
+					if( syntaxError != null ) {
+						if( held == null )
+							out.flush( );
+						this.context.report( syntaxError );
+						return;
+					}
+					
+					if( !started )
+						LUTE.emitHeader( out );
+					if( !out.endsNear( '\n' ) )
+						out.append( "\n" );
+					out.append( "}" );
+					out.append( System.lineSeparator( ) );
+					out.flush( );
+					
+					if( held != null )
+						this.context.out.print( held.toString( ) );
+					return;
+				}
+			}
 		}
 		
-		public ID_TOKEN getConToken( ) {
-			return this.val;
+		/**
+		 * Hands a batch on, waiting while the queue is full. Returns false (dropping it) if nothing is
+		 * going to take from the queue any more.
+		 */
+		private boolean put( SPSC_QUEUE<TOKEN_BATCH> queue, TOKEN_BATCH batch ) {
+			for( int waits = 0; !queue.offer( batch ); ++waits ) {
+				if( this.cancelled || (queue == this.lexed && this.lexingStopped) )
+					return false;
+				this.idle( waits );
+			}
+			return true;
 		}
 		
-		@Override
-		public I_VALUE_TOKEN toToken() {
-			// TODO Auto-generated method stub
-			return null;
-		}
-
-		@Override
-		public String getType() {
-			// TODO Auto-generated method stub
-			return null;
+		/**
+		 * Takes the next batch, waiting while the queue is empty. Returns null if the pipeline has been
+		 * stopped, or the stage filling the queue has returned without handing on its last batch.
+		 */
+		private TOKEN_BATCH take( SPSC_QUEUE<TOKEN_BATCH> queue ) {
+			TOKEN_BATCH batch;
+			for( int waits = 0; (batch = queue.poll( )) == null; ++waits ) {
+				if( this.cancelled || (queue == this.lexed ? this.lexerDone : this.validatorDone) ) {
+					// it may have handed on its last batch just before
+					return queue.poll( );
+				}
+				this.idle( waits );
+			}
+			return batch;
 		}
 		
-		@Override
-		public String toCCode( ) {
-			if( this.token != null ) {
-				StringBuilder sb = new StringBuilder( );
-				sb.append( "new list<" + (this.isFloat ? "float" : "int") + ">(" + this.val.getTokenChars() + ",");
-				sb.append( "new list<" + (this.isFloat ? "float" : "int") + ">(" + this.token.getTokenChars( ) + "," );
-				sb.append( "0))" );
-				return sb.toString( );
-			}
-			return "";
+		// spin a little first, the other side is usually only a moment away
+		private void idle( int waits ) {
+			if( waits < 64 )
+				Thread.yield( );
+			else
+				LockSupport.parkNanos( 20000L );
 		}
-
 	}
 	
-	public class CONDITIONAL_SEMANTIC_CHUNK implements MULTI_TOKEN_SEMANTIC_CHUNK {
-
-		private I_TOKEN cond;
-		private I_TOKEN trueVal;
-		private I_TOKEN falseVal;
+	/**
+	 * A batch of tokens handed from one stage of the @TOKEN_PIPELINE to the next, with what the next
+	 * stage needs of each in parallel arrays
+	 */
+	public static class TOKEN_BATCH {
+		public final I_TOKEN[] tokens;
+		public final int[] kinds;
+		public final int[] lines;
+		public final int[] offsets;
+		public final int[] lengths;
 		
-		public CONDITIONAL_SEMANTIC_CHUNK( I_TOKEN cond, I_TOKEN trueVal, I_TOKEN falseVal ) {
-			this.cond = cond;
-			this.trueVal = trueVal;
-			this.falseVal = falseVal;
+		// the logic depths, once checked
+		public final int[] depths;
+		
+		// the token numbers and starts, only for debug output
+		public final int[] nums;
+		public final int[] starts;
+		
+		public int count = 0;
+		
+		// set on the last batch
+		public boolean last = false;
+		
+		// the syntax error that ends the tokens early, if any, known of from the token at errorAt on
+		public SYNTAX_ERROR syntaxError = null;
+		public int errorAt = 0;
+		
+		public TOKEN_BATCH( int capacity ) {
+			this.tokens = new I_TOKEN[ capacity ];
+			this.kinds = new int[ capacity ];
+			this.lines = new int[ capacity ];
+			this.offsets = new int[ capacity ];
+			this.lengths = new int[ capacity ];
+			this.depths = new int[ capacity ];
+			this.nums = new int[ capacity ];
+			this.starts = new int[ capacity ];
 		}
 		
-		@Override
-		public I_VALUE_TOKEN toToken() {
-			return null;
-			//boolean b = this.cond instanceof BOOL_TOKEN? ((BOOL_TOKEN)this.cond).getValue( ) : this.cond.getValueAsBoolean( );
-			//return b ? this.trueVal : this.falseVal;
+		public void add( I_TOKEN token, int kind, int line, int offset, int length, int depth, int num, int start ) {
+			int ix = this.count++;
+			this.tokens[ ix ] = token;
+			this.kinds[ ix ] = kind;
+			this.lines[ ix ] = line;
+			this.offsets[ ix ] = offset;
+			this.lengths[ ix ] = length;
+			this.depths[ ix ] = depth;
+			this.nums[ ix ] = num;
+			this.starts[ ix ] = start;
 		}
-
-		@Override
-		public String getType() {
-			return this.toToken( ).getValueType( );
+		
+		public boolean isFull( ) {
+			return this.count == this.tokens.length;
 		}
 		
-		@Override
-		public String toCCode( ) {
-			return cond.getTokenChars() + " ? " + this.trueVal.getTokenChars( ) + " : " + this.falseVal.getTokenChars( );
+		public void setSyntaxError( SYNTAX_ERROR syntaxError, int errorAt ) {
+			this.syntaxError = syntaxError;
+			this.errorAt = errorAt;
 		}
-	}
-	
-	public String tokensAsString( I_TOKEN ... tokens ) {
-		return this.tokensAsString( false, tokens );
-	}
-	
-	public String tokensAsString( boolean useValues, I_TOKEN ... tokens ) {
-		// Assemble tokens into string. We stupidly use name rather than chars for value tokens because reasons
-		StringBuilder sb = new StringBuilder( );
-		for( int i = 0; i < tokens.length; ++i ) {
-			sb.append( (tokens[i] instanceof I_VALUE_TOKEN || tokens[i] instanceof ID_TOKEN) && !useValues ? tokens[i].getTokenName( ) : tokens[i].getTokenChars( ) );
-			if( i < tokens.length - 1 )
-				sb.append( " " );
+		
+		/**
+		 * Marks this as the last batch, ended early by the syntax error if it isn't null
+		 */
+		public void finish( SYNTAX_ERROR syntaxError ) {
+			this.last = true;
+			if( this.syntaxError == null )
+				this.setSyntaxError( syntaxError, this.count );
 		}
-		return sb.toString( );
-	}
-	
-	
-	private final Pattern idPat = Pattern.compile( 
-			TOKEN.VALUE.getTokenChars( ) + " ID" + " : (" + TOKEN.INTEGER_TYPEDEF.getTokenChars( ) + "|" + TOKEN.FLOAT_TYPEDEF.getTokenChars( ) + "|" + TOKEN.BOOLEAN_TYPEDEF.getTokenChars( ) + ") ="
-	);
-	private final Pattern refIdPat = Pattern.compile( 
-			TOKEN.VALUE.getTokenChars( ) + " ID" + " : (" + TOKEN.INTEGER_TYPEDEF.getTokenChars( ) + "|" + TOKEN.FLOAT_TYPEDEF.getTokenChars( ) + "|" + TOKEN.BOOLEAN_TYPEDEF.getTokenChars( ) + ") ref ="
-	);
-	private final Pattern arrayIdPat = Pattern.compile( 
-			TOKEN.VALUE.getTokenChars( ) + " ID" + " : (" + TOKEN.INTEGER_TYPEDEF.getTokenChars( ) + "|" + TOKEN.FLOAT_TYPEDEF.getTokenChars( ) + ") list ="
-	);
-	private final Pattern arrayRefIdPat = Pattern.compile( 
-			TOKEN.VALUE.getTokenChars( ) + " ID" + " : (" + TOKEN.INTEGER_TYPEDEF.getTokenChars( ) + "|" + TOKEN.FLOAT_TYPEDEF.getTokenChars( ) + ") list ref ="
-	);
-	
-	public boolean tokensMatchIdentifierDeclaration( I_TOKEN ... tokens ) {
-		String s = this.tokensAsString( tokens );
-		return 	this.idPat.matcher( s ).matches( ) || 
-				this.refIdPat.matcher( s ).matches( ) ||
-				this.arrayIdPat.matcher( s ).matches( ) ||
-				this.arrayRefIdPat.matcher( s ).matches( );
 	}
 	
 	/**
-	 * Returns any valid found semantic chunk for the provided tokens.
-	 * 
-	 * @param depth			The logic depth for the sequence (only necessary for identifier chunks
-	 * @param tokens
-	 * @return				A valid MULTI_TOKEN_SEMANTIC_CHUNK or null
+	 * Single-Producer Single-Consumer Queue <br />
+	 * A bounded ring that one thread offers to and one other thread polls from, without locks: each
+	 * side only ever writes its own counter, and publishes it after the slot it covers.
 	 */
-	public MULTI_TOKEN_SEMANTIC_CHUNK getSemanticChunkForTokens( int depth, I_TOKEN ... tokens ) {
-		String s = this.tokensAsString( tokens );
+	public static class SPSC_QUEUE<E> {
+		private final Object[] slots;
+		private final int mask;
 		
-		if( this.idPat.matcher( s ).matches( ) )
-			return new IDENTIFIER_DECLARATION_SEMANTIC_CHUNK( depth, tokens[1], tokens[ 3 ], false, false );
-		else if( this.arrayIdPat.matcher( s ).matches( ) )
-			return new IDENTIFIER_DECLARATION_SEMANTIC_CHUNK( depth, tokens[1], tokens[ 3 ], false, true );
-		else if( refIdPat.matcher( s ).matches( ) )
-			return new IDENTIFIER_DECLARATION_SEMANTIC_CHUNK( depth, tokens[1], tokens[ 3 ], true, false );
-		else if( this.arrayRefIdPat.matcher( s ).matches( ) )
-			return new IDENTIFIER_DECLARATION_SEMANTIC_CHUNK( depth, tokens[1], tokens[ 3 ], true, true );
+		// the next slot to poll from and to offer to, counting up forever
+		private final AtomicLong head = new AtomicLong( );
+		private final AtomicLong tail = new AtomicLong( );
 		
-		final Pattern hackyListPattern = Pattern.compile( "ID = (hd|tl) \\( ID \\)" );
-		if( hackyListPattern.matcher( s ).matches( ) )
-			return new HACKY_COMPARE_LIST_OP_SEMANTIC_CHUNK( tokens[0], tokens[2], tokens[4] );
+		/**
+		 * @param capacity		rounded up to a power of 2
+		 */
+		public SPSC_QUEUE( int capacity ) {
+			int size = Integer.highestOneBit( Math.max( 1, capacity - 1 ) ) << 1;
+			this.slots = new Object[ size ];
+			this.mask = size - 1;
+		}
+		
+		/**
+		 * Adds e, or returns false if the queue is full. Only ever called from the producing thread.
+		 */
+		public boolean offer( E e ) {
+			long tail = this.tail.get( );
+			if( tail - this.head.get( ) == this.slots.length )
+				return false;
+			this.slots[ (int)tail & this.mask ] = e;
+			this.tail.lazySet( tail + 1 );
+			return true;
+		}
+		
+		/**
+		 * Removes the oldest element, or returns null if the queue is empty. Only ever called from the
+		 * consuming thread.
+		 */
+		@SuppressWarnings( "unchecked" )
+		public E poll( ) {
+			long head = this.head.get( );
+			if( head == this.tail.get( ) )
+				return null;
+			int slot = (int)head & this.mask;
+			E e = (E)this.slots[ slot ];
+			this.slots[ slot ] = null;
+			this.head.lazySet( head + 1 );
+			return e;
+		}
+	}
+	
+	/**
+	 * Lex Chunk <br />
+	 * Lexes a chunk of whole lines into batches of tokens, for @lexParallel. The tokens are numbered
+	 * from 0 and their identifiers are left to be interned, the rest is as they'll be in the buffer.
+	 */
+	public static class LEX_CHUNK extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
 		
-		final Pattern hackyRefListPattern = Pattern.compile( "ID = (hd|tl) \\( ! ID \\)" );
-		if( hackyRefListPattern.matcher( s ).matches( ) )
-			return new HACKY_COMPARE_LIST_OP_SEMANTIC_CHUNK( tokens[0], tokens[2], tokens[5] );
+		private final SOURCE_BUFFER source;
+		private final int firstLine;
+		private final int end;
 		
-		//CON
-		final Pattern intListConPattern = Pattern.compile( "INT :: INT_ARRAY" );
-		if( intListConPattern.matcher( s ).matches( ) )
-			return new LIST_CON_SEMANTIC_CHUNK( (I_VALUE_TOKEN)tokens[0], (INT_ARRAY_TOKEN)tokens[2] );
+		public ArrayList<TOKEN_BATCH> batches = new ArrayList<TOKEN_BATCH>( );
+		public int tokenNums;
+		public SYNTAX_ERROR syntaxError;
 		
-		final Pattern floatListConPattern = Pattern.compile( "FLOAT :: FLOAT_ARRAY" );
-		if( floatListConPattern.matcher( s ).matches( ) )
-			return new LIST_CON_SEMANTIC_CHUNK( (I_VALUE_TOKEN)tokens[0], (FLOAT_ARRAY_TOKEN)tokens[2] );
+		public LEX_CHUNK( SOURCE_BUFFER source, int firstLine, int end ) {
+			this.source = source;
+			this.firstLine = firstLine;
+			this.end = end;
+		}
 		
-		//ID CON
-		final Pattern idListConPattern = Pattern.compile( "ID :: \\[ ! ID \\]" );
-		if( idListConPattern.matcher( s ).matches( ) ) {
-			return new ID_LIST_CON_SEMANTIC_CHUNK( (ID_TOKEN)tokens[0], tokens[4] );
+		@Override
+		protected void compute( ) {
+			TOKEN_STREAM tokens = new TOKEN_STREAM( this.source, this.firstLine, this.end, new LITERAL_SCAN( null ) );
+			TOKEN_BATCH batch = null;
+			while( tokens.hasNext( ) ) {
+				I_TOKEN token = tokens.next( );
+				if( batch == null || batch.isFull( ) ) {
+					batch = new TOKEN_BATCH( TOKEN_PIPELINE.BATCH_TOKENS );
+					this.batches.add( batch );
+				}
+				batch.add( token, token.getKind( ), tokens.getLine( ), tokens.getOffset( ), tokens.getLength( ), 0, tokens.getTokenNum( ), tokens.getTokenStart( ) );
+			}
+			this.tokenNums = tokens.getTokenNums( );
+			this.syntaxError = tokens.getSyntaxError( );
 		}
+	}
+	
+	/**
+	 * Emit Group <br />
+	 * Writes the C for a group of whole items of the program on its own, for @emitParallel, carrying on
+	 * as if after would have been written just before it.
+	 */
+	public static class EMIT_GROUP extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
 		
-		final Pattern equivPattern = Pattern.compile( "(ID|INT|FLOAT|BOOL) = (INT|FLOAT|BOOL|INT_ARRAY|FLOAT_ARRAY)" );
-		if( equivPattern.matcher( s ).matches( ) )
-				return new EQUIVALENCE_SEMANTIC_CHUNK( (I_TOKEN)tokens[0], (I_VALUE_TOKEN)tokens[2] );
+		public final LINEAR_IR ir;
 		
+		// the instructions, from (inclusive) up to to (exclusive)
+		public final int from;
+		public final int to;
+		public final String after;
 		
-		final Pattern condPattern = Pattern.compile( "if (ID|INT|FLOAT|BOOL) then (ID|INT|FLOAT|BOOL) else (ID|INT|FLOAT|BOOL)" );
-		if( condPattern.matcher( s ).matches( ) )
-			return new CONDITIONAL_SEMANTIC_CHUNK( tokens[1], tokens[3], tokens[5] );
+		// whether the group is the last of the program
+		public final boolean ending;
+		public String code;
 		
-		return null;
+		public EMIT_GROUP( LINEAR_IR ir, int from, int to, String after, boolean ending ) {
+			this.ir = ir;
+			this.from = from;
+			this.to = to;
+			this.after = after;
+			this.ending = ending;
+		}
+		
+		@Override
+		protected void compute( ) {
+			StringWriter code = new StringWriter( );
+			C_EMITTER out = new C_EMITTER( code ).after( this.after );
+			try {
+				LUTE.emitCCode( out, this.ir, this.from, this.to, this.ending );
+				out.flush( );
+			}
+			catch( IOException ioe ) {
+				throw new UncheckedIOException( ioe );
+			}
+			this.code = code.toString( );
+		}
 	}
 }
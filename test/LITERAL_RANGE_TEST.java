@@ -0,0 +1,83 @@
+import java.io.File;
+import java.util.List;
+
+/**
+ * Literal Range Test <br />
+ * Compiles int literals too big for an int, in every mode, and checks each comes back as a syntax error
+ * blaming the whole literal (with its line and position), rather than an exception out of @LUTE.compile. <br />
+ * From the top: javac -d . LUTE.java, javac -cp . -d test test/LITERAL_RANGE_TEST.java, then
+ * java -cp .:test LITERAL_RANGE_TEST (exits 1 if it fails)
+ */
+public class LITERAL_RANGE_TEST {
+	
+	// the sources, and the line, position and token each one's error should have
+	private static final String[] SOURCES = {
+		"val x : int = 99999999999;\n",
+		"val a : int = 1;\nval b : int = 2;\n  a := 2147483648;\n",
+		"val a : int = 2147483647;\nval b : int = 2147483648;\n",
+		"val l : int list = [1,2,99999999999999999999,3];\n",
+	};
+	private static final int[] LINES = { 1, 3, 2, 1 };
+	private static final int[] POSITIONS = { 14, 7, 14, 24 };
+	private static final String[] TOKENS = { "99999999999", "2147483648", "2147483648", "99999999999999999999" };
+	
+	private static final String[] MODES = { "default", "streaming", "fused", "pipelined", "parallel lexing", "parallel emission", "off heap", "spill" };
+	
+	public static void main( String[] args ) throws Exception {
+		int failures = 0;
+		for( String mode : MODES ) {
+			for( int ix = 0; ix < SOURCES.length; ++ix ) {
+				LUTE lute = LITERAL_RANGE_TEST.inMode( mode );
+				String problem;
+				try {
+					List<LUTE.SYNTAX_ERROR> errors = lute.compile( SOURCES[ ix ] ).getErrors( );
+					if( errors.size( ) != 1 )
+						problem = errors.size( ) + " errors";
+					else {
+						LUTE.SYNTAX_ERROR error = errors.get( 0 );
+						problem = error.line == LINES[ ix ] && error.position == POSITIONS[ ix ] && error.token.equals( TOKENS[ ix ] ) ? null
+							: "line " + error.line + ", position " + error.position + ", token " + error.token;
+					}
+				}
+				catch( RuntimeException re ) {
+					problem = "threw " + re;
+				}
+				if( problem != null ) {
+					System.out.println( "LITERAL_RANGE_TEST failed: source " + ix + " (" + mode + "): " + problem );
+					failures++;
+				}
+			}
+		}
+		if( failures > 0 )
+			System.exit( 1 );
+		System.out.println( "LITERAL_RANGE_TEST passed" );
+	}
+	
+	private static LUTE inMode( String mode ) {
+		LUTE lute = new LUTE( );
+		switch( mode ) {
+			case "streaming":
+				lute.setStreaming( true );
+				break;
+			case "fused":
+				lute.setFused( true );
+				break;
+			case "pipelined":
+				lute.setPipelined( true );
+				break;
+			case "parallel lexing":
+				lute.setParallelLexing( true );
+				break;
+			case "parallel emission":
+				lute.setParallelEmission( true );
+				break;
+			case "off heap":
+				lute.setOffHeap( true );
+				break;
+			case "spill":
+				lute.setSpillDirectory( new File( System.getProperty( "java.io.tmpdir" ) ) );
+				break;
+		}
+		return lute;
+	}
+}
@@ -0,0 +1,91 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+ * Pipeline Test <br />
+ * Compiles a long source with a syntax error at the very end with @LUTE.setPipelined, writing the C to
+ * an output that takes its time, so the queues between the stages are full when the error is found.
+ * The error has to come out at the end, rather than the compilation waiting forever. <br />
+ * From the top: javac -d . LUTE.java, javac -cp . -d test test/PIPELINE_TEST.java, then
+ * java -cp .:test PIPELINE_TEST (exits 1 if it fails)
+ */
+public class PIPELINE_TEST {
+	
+	// how long the compilation gets before it's taken to be stuck
+	private static final long TIMEOUT_MILLIS = 60000;
+	
+	public static void main( String[] args ) throws Exception {
+		// long names, so the C for every batch of tokens fills the emitter's buffer and waits on a write
+		StringBuilder sb = new StringBuilder( );
+		for( int ix = 0; ix < 5000; ++ix )
+			sb.append( "val a_long_identifier_so_that_every_batch_writes_out_c_" ).append( ix ).append( " : int = " ).append( ix ).append( ";\n" );
+		sb.append( "val val ;\n" );
+		final String source = sb.toString( );
+		
+		final SLOW_OUTPUT slow = new SLOW_OUTPUT( );
+		final Throwable[] failure = new Throwable[ 1 ];
+		Thread compile = new Thread( new Runnable( ) {
+			public void run( ) {
+				try {
+					LUTE lute = new LUTE( );
+					lute.setPipelined( true );
+					lute.test( LUTE.toSource( source ), 0, new PrintStream( slow ) );
+				}
+				catch( Throwable t ) {
+					failure[ 0 ] = t;
+				}
+			}
+		} );
+		compile.setDaemon( true );
+		compile.start( );
+		compile.join( TIMEOUT_MILLIS );
+		
+		if( compile.isAlive( ) )
+			PIPELINE_TEST.fail( "still compiling after " + TIMEOUT_MILLIS + "ms" );
+		if( failure[ 0 ] != null ) {
+			failure[ 0 ].printStackTrace( );
+			PIPELINE_TEST.fail( "threw " + failure[ 0 ] );
+		}
+		
+		String output = slow.toString( );
+		String expected = "Line 5001 : syntax error : val" + System.lineSeparator( );
+		if( !output.endsWith( expected ) )
+			PIPELINE_TEST.fail( "ended with " + output.substring( Math.max( 0, output.length( ) - 80 ) ) );
+		System.out.println( "PIPELINE_TEST passed" );
+	}
+	
+	private static void fail( String why ) {
+		System.out.println( "PIPELINE_TEST failed: " + why );
+		System.exit( 1 );
+	}
+	
+	/**
+	 * Keeps everything written to it, taking a while over each write
+	 */
+	private static class SLOW_OUTPUT extends OutputStream {
+		private final StringBuilder written = new StringBuilder( );
+		
+		@Override
+		public synchronized void write( int b ) throws IOException {
+			this.written.append( (char)b );
+		}
+		
+		@Override
+		public synchronized void write( byte[] b, int off, int len ) throws IOException {
+			try {
+				Thread.sleep( 20 );
+			}
+			catch( InterruptedException ie ) {
+				throw new IOException( ie );
+			}
+			for( int ix = off; ix < off + len; ++ix )
+				this.written.append( (char)b[ ix ] );
+		}
+		
+		@Override
+		public synchronized String toString( ) {
+			return this.written.toString( );
+		}
+	}
+}
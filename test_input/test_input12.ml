@@ -0,0 +1,12 @@
+val i : int =
+  0;
+val r : real list =
+  [1.0];
+val x : int ref =
+ref 0;
+val y : real ref = ref
+  2.0;
+x := -
+  1;
+val z : int = -
+  4;